@@ -2,6 +2,7 @@ package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
 
 import android.annotation.TargetApi;
 import android.os.Build;
+import android.util.Base64;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -24,6 +25,11 @@ public class AudioBufferReading extends SensorReading {
      */
     private final short[] buffer;
 
+    /**
+     * The encoding of the buffer in the JSON payload, null for a JSON array of samples.
+     */
+    private final AudioCodec codec;
+
     /**
      * Instantiates an audio buffer reading.
      *
@@ -34,8 +40,24 @@ public class AudioBufferReading extends SensorReading {
      * @param buffer the microphone data buffer
      */
     public AudioBufferReading(String userID, String deviceType, String deviceID, long t, short[] buffer) {
+        this(userID, deviceType, deviceID, t, buffer, null);
+    }
+
+    /**
+     * Instantiates an audio buffer reading with a compact encoding. The encoded bytes are
+     * sent as a base64 string, along with the codec tag and the number of samples.
+     *
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param deviceType describes the device.
+     * @param deviceID unique device identifier.
+     * @param t the timestamp at which the event occurred, in Unix time by convention.
+     * @param buffer the microphone data buffer
+     * @param codec the encoding of the buffer, or null to send a JSON array of samples
+     */
+    public AudioBufferReading(String userID, String deviceType, String deviceID, long t, short[] buffer, AudioCodec codec) {
         super(userID, deviceType, deviceID, "SENSOR_AUDIO", t);
         this.buffer = buffer;
+        this.codec = codec;
     }
 
     @TargetApi(Build.VERSION_CODES.KITKAT)
@@ -45,8 +67,15 @@ public class AudioBufferReading extends SensorReading {
         JSONObject data = new JSONObject();
         try {
             data.put("t", timestamp);
-            JSONArray audioBuffer = new JSONArray(buffer);
-            data.put("values", audioBuffer);
+            if (codec == null) {
+                JSONArray audioBuffer = new JSONArray(buffer);
+                data.put("values", audioBuffer);
+            } else {
+                byte[] encoded = codec.encode(buffer, buffer.length);
+                data.put("codec", codec.tag);
+                data.put("n", buffer.length);
+                data.put("values", Base64.encodeToString(encoded, Base64.NO_WRAP));
+            }
             obj.put("data", data);
         } catch (JSONException e) {
             e.printStackTrace();
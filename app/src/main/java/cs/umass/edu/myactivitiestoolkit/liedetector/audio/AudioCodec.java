@@ -0,0 +1,219 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+/**
+ * Compact encodings for 16-bit audio sent to the server. The codec tag identifies the
+ * encoding in the JSON envelope of an {@link AudioBufferReading}, so the server knows how
+ * to decode the payload.
+ * <br><br>
+ * Bytes per second of 8 kHz audio, before base64:
+ * <ul>
+ *     <li>{@link #PCM16}: 16000, lossless</li>
+ *     <li>{@link #MULAW}: 8000, G.711 mu-law, about 14 bits of dynamic range</li>
+ *     <li>{@link #IMA_ADPCM}: about 4000, IMA ADPCM with 4 bits per sample</li>
+ * </ul>
+ * The original encoding, a JSON array of decimal samples, is not a codec: a reading
+ * without one is sent that way, and understood by every server version.
+ *
+ * @see AudioBufferReading
+ */
+public enum AudioCodec {
+
+    /** Raw 16-bit little-endian PCM. **/
+    PCM16("pcm16le") {
+        @Override
+        public byte[] encode(short[] samples, int length) {
+            byte[] data = new byte[2 * length];
+            for (int i = 0, j = 0; i < length; i++) {
+                short s = samples[i];
+                data[j++] = (byte) s;
+                data[j++] = (byte) (s >> 8);
+            }
+            return data;
+        }
+
+        @Override
+        public short[] decode(byte[] data, int numSamples) {
+            short[] samples = new short[numSamples];
+            for (int i = 0, j = 0; i < numSamples; i++, j += 2) {
+                samples[i] = (short) ((data[j] & 0xff) | (data[j + 1] << 8));
+            }
+            return samples;
+        }
+    },
+
+    /** G.711 mu-law, one byte per sample. **/
+    MULAW("mulaw") {
+        @Override
+        public byte[] encode(short[] samples, int length) {
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = linearToMuLaw(samples[i]);
+            }
+            return data;
+        }
+
+        @Override
+        public short[] decode(byte[] data, int numSamples) {
+            short[] samples = new short[numSamples];
+            for (int i = 0; i < numSamples; i++) {
+                samples[i] = muLawToLinear(data[i]);
+            }
+            return samples;
+        }
+    },
+
+    /**
+     * IMA ADPCM, four bits per sample. The first two bytes hold the initial predictor
+     * (little-endian) and the third the initial step index; the fourth is padding. Samples
+     * follow two to a byte, low nibble first.
+     */
+    IMA_ADPCM("ima-adpcm") {
+        @Override
+        public byte[] encode(short[] samples, int length) {
+            byte[] data = new byte[ADPCM_HEADER_SIZE + (length + 1) / 2];
+            int predictor = length > 0 ? samples[0] : 0;
+            int index = 0;
+            data[0] = (byte) predictor;
+            data[1] = (byte) (predictor >> 8);
+            data[2] = (byte) index;
+
+            for (int i = 0; i < length; i++) {
+                int step = ADPCM_STEPS[index];
+                int diff = samples[i] - predictor;
+                int code = 0;
+                if (diff < 0) {
+                    code = 8;
+                    diff = -diff;
+                }
+                int delta = step >> 3;
+                if (diff >= step) {
+                    code |= 4;
+                    diff -= step;
+                    delta += step;
+                }
+                step >>= 1;
+                if (diff >= step) {
+                    code |= 2;
+                    diff -= step;
+                    delta += step;
+                }
+                step >>= 1;
+                if (diff >= step) {
+                    code |= 1;
+                    delta += step;
+                }
+                predictor = clamp16((code & 8) != 0 ? predictor - delta : predictor + delta);
+                index = clampIndex(index + ADPCM_INDEX_TABLE[code]);
+
+                int b = ADPCM_HEADER_SIZE + i / 2;
+                data[b] |= (i & 1) == 0 ? code : code << 4;
+            }
+            return data;
+        }
+
+        @Override
+        public short[] decode(byte[] data, int numSamples) {
+            short[] samples = new short[numSamples];
+            int predictor = (short) ((data[0] & 0xff) | (data[1] << 8));
+            int index = clampIndex(data[2]);
+
+            for (int i = 0; i < numSamples; i++) {
+                int b = data[ADPCM_HEADER_SIZE + i / 2];
+                int code = (i & 1) == 0 ? b & 0x0f : (b >> 4) & 0x0f;
+                int step = ADPCM_STEPS[index];
+                int delta = step >> 3;
+                if ((code & 4) != 0) delta += step;
+                if ((code & 2) != 0) delta += step >> 1;
+                if ((code & 1) != 0) delta += step >> 2;
+                predictor = clamp16((code & 8) != 0 ? predictor - delta : predictor + delta);
+                index = clampIndex(index + ADPCM_INDEX_TABLE[code]);
+                samples[i] = (short) predictor;
+            }
+            return samples;
+        }
+    };
+
+    /** Identifies the codec in the JSON envelope. **/
+    public final String tag;
+
+    AudioCodec(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Encodes the first length samples.
+     * @param samples the audio buffer
+     * @param length the number of samples to encode
+     * @return the encoded bytes
+     */
+    public abstract byte[] encode(short[] samples, int length);
+
+    /**
+     * Decodes the given number of samples.
+     * @param data bytes produced by {@link #encode(short[], int)}
+     * @param numSamples the number of samples that were encoded
+     * @return the decoded samples
+     */
+    public abstract short[] decode(byte[] data, int numSamples);
+
+    /**
+     * Returns the codec with the given tag.
+     * @param tag a codec tag, e.g. "mulaw"
+     * @return the codec, or null if the tag is unknown, e.g. "json" for a JSON array of samples
+     */
+    public static AudioCodec fromTag(String tag) {
+        for (AudioCodec codec : values()) {
+            if (codec.tag.equals(tag)) return codec;
+        }
+        return null;
+    }
+
+    private static final int MULAW_BIAS = 0x84;
+    private static final int MULAW_CLIP = 32635;
+
+    private static byte linearToMuLaw(int sample) {
+        int sign = (sample >> 8) & 0x80;
+        if (sign != 0) sample = -sample;
+        if (sample > MULAW_CLIP) sample = MULAW_CLIP;
+        sample += MULAW_BIAS;
+        int exponent = 7;
+        for (int mask = 0x4000; (sample & mask) == 0 && exponent > 0; mask >>= 1) {
+            exponent--;
+        }
+        int mantissa = (sample >> (exponent + 3)) & 0x0f;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+
+    private static short muLawToLinear(byte b) {
+        int u = ~b & 0xff;
+        int sign = u & 0x80;
+        int exponent = (u >> 4) & 0x07;
+        int mantissa = u & 0x0f;
+        int sample = (((mantissa << 3) + MULAW_BIAS) << exponent) - MULAW_BIAS;
+        return (short) (sign != 0 ? -sample : sample);
+    }
+
+    private static final int ADPCM_HEADER_SIZE = 4;
+
+    private static final int[] ADPCM_INDEX_TABLE = {
+            -1, -1, -1, -1, 2, 4, 6, 8,
+            -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] ADPCM_STEPS = {
+            7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+            50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230,
+            253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963,
+            1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327,
+            3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487,
+            12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    private static int clamp16(int value) {
+        return Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    private static int clampIndex(int index) {
+        return Math.max(0, Math.min(ADPCM_STEPS.length - 1, index));
+    }
+}
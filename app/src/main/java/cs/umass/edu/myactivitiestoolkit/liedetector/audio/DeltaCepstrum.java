@@ -0,0 +1,202 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.util.Arrays;
+
+/**
+ * Appends delta and delta-delta coefficients to a stream of cepstra. The derivatives are
+ * the usual regression over +/- window frames:
+ * <pre>
+ *     d[t] = sum_{n=1..N} n (c[t+n] - c[t-n]) / (2 sum_{n=1..N} n^2)
+ * </pre>
+ * applied once to the cepstra and once more to the deltas. Only the last 2N + 1 cepstra
+ * and deltas are kept, and each new frame updates exactly one delta and one delta-delta,
+ * so the cost per frame is constant and nothing is allocated after construction.
+ * <br><br>
+ * Because the regression looks N frames ahead, the output lags the input by a fixed
+ * {@link #getDelay()} = 2N frames. The start of the stream is padded by repeating the
+ * first frame, and {@link #finish()} pads the end by repeating the last frame, so that the
+ * last 2N frames are emitted as well.
+ * <br><br>
+ * A delta stage can be chained directly after an {@link MFCCStream}:
+ * <pre>
+ * {@code stream.registerListener(new DeltaCepstrum(stream.getNumFeatures(), 2, listener));}
+ * </pre>
+ *
+ * @see MFCCStream
+ */
+public class DeltaCepstrum implements MFCCStream.MFCCListener {
+
+    /** The number of static coefficients per frame. **/
+    private final int numCoeffs;
+
+    /** The number of frames on either side used by the regression. **/
+    private final int window;
+
+    /** The length of the rings, 2 * window + 1. **/
+    private final int size;
+
+    /** The regression denominator, 2 * sum(n^2). **/
+    private final double norm;
+
+    /** The most recent cepstra, indexed by frame modulo {@link #size}. **/
+    private final double[][] cepstra;
+
+    /** The most recent deltas, indexed by frame modulo {@link #size}. **/
+    private final double[][] deltas;
+
+    /** The stream position of each buffered cepstrum. **/
+    private final long[] sampleIndices;
+
+    /** Static, delta and delta-delta coefficients of the current output frame. **/
+    private final double[] features;
+
+    /** Receives the output of {@link #onMFCCFrame(double[], long)}, may be null. **/
+    private final MFCCStream.MFCCListener listener;
+
+    /** The number of frames received. **/
+    private long frames = 0;
+
+    /**
+     * Instantiates a delta stage.
+     * @param numCoeffs the number of static coefficients per frame
+     * @param window the number of frames on either side used by the regression, typically 2
+     */
+    public DeltaCepstrum(int numCoeffs, int window) {
+        this(numCoeffs, window, null);
+    }
+
+    /**
+     * Instantiates a delta stage which forwards its output frames.
+     * @param numCoeffs the number of static coefficients per frame
+     * @param window the number of frames on either side used by the regression, typically 2
+     * @param listener receives static+delta+delta-delta frames
+     */
+    public DeltaCepstrum(int numCoeffs, int window, MFCCStream.MFCCListener listener) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Delta window must be at least 1.");
+        }
+        this.numCoeffs = numCoeffs;
+        this.window = window;
+        this.listener = listener;
+        size = 2 * window + 1;
+        double sum = 0;
+        for (int n = 1; n <= window; n++) {
+            sum += n * n;
+        }
+        norm = 2 * sum;
+        cepstra = new double[size][numCoeffs];
+        deltas = new double[size][numCoeffs];
+        sampleIndices = new long[size];
+        features = new double[3 * numCoeffs];
+    }
+
+    /**
+     * Returns the number of frames by which the output lags the input.
+     * @return 2 * window
+     */
+    public int getDelay() {
+        return 2 * window;
+    }
+
+    /**
+     * Returns the number of values in each output frame.
+     * @return 3 * numCoeffs
+     */
+    public int getNumFeatures() {
+        return features.length;
+    }
+
+    /**
+     * Discards the buffered frames, e.g. at the start of a new recording.
+     */
+    public void reset() {
+        frames = 0;
+    }
+
+    /**
+     * Emits the last {@link #getDelay()} frames to the listener by padding the stream with
+     * copies of its last frame, e.g. when recording stops, then resets the stage.
+     */
+    public void finish() {
+        if (frames > 0) {
+            long last = frames - 1;
+            // the padding fills other slots of the ring, so the last frame stays in place
+            double[] cepstrum = cepstra[slot(last)];
+            long sampleIndex = sampleIndices[slot(last)];
+            for (int n = 0; n < getDelay(); n++) {
+                onMFCCFrame(cepstrum, sampleIndex);
+            }
+        }
+        reset();
+    }
+
+    /**
+     * Adds a frame of cepstra and, once enough frames have been seen, writes the static,
+     * delta and delta-delta coefficients of the frame {@link #getDelay()} frames back.
+     * @param cepstrum the static coefficients of the newest frame
+     * @param sampleIndex the stream position of the newest frame
+     * @param out receives the output frame, at least {@link #getNumFeatures()} long
+     * @return the stream position of the output frame, or -1 if no frame is available yet
+     */
+    public long update(double[] cepstrum, long sampleIndex, double[] out) {
+        long t = frames++;
+        if (t == 0) {
+            // pad the history with the first frame, whose derivatives are then all zero
+            for (int k = 0; k < size; k++) {
+                System.arraycopy(cepstrum, 0, cepstra[k], 0, numCoeffs);
+                Arrays.fill(deltas[k], 0);
+                sampleIndices[k] = sampleIndex;
+            }
+        }
+        int slot = slot(t);
+        System.arraycopy(cepstrum, 0, cepstra[slot], 0, numCoeffs);
+        sampleIndices[slot] = sampleIndex;
+
+        // the newest frame completes the delta of frame t - N ...
+        regress(cepstra, t - window, deltas[slot(t - window)]);
+        if (t < getDelay()) return -1;
+
+        // ... which completes the delta-delta of frame t - 2N
+        long d = t - getDelay();
+        System.arraycopy(cepstra[slot(d)], 0, out, 0, numCoeffs);
+        System.arraycopy(deltas[slot(d)], 0, out, numCoeffs, numCoeffs);
+        regressInto(deltas, d, out, 2 * numCoeffs);
+        return sampleIndices[slot(d)];
+    }
+
+    @Override
+    public void onMFCCFrame(double[] cepstrum, long sampleIndex) {
+        long index = update(cepstrum, sampleIndex, features);
+        if (index >= 0 && listener != null) {
+            listener.onMFCCFrame(features, index);
+        }
+    }
+
+    private void regress(double[][] ring, long t, double[] out) {
+        regressInto(ring, t, out, 0);
+    }
+
+    /**
+     * Applies the regression centered on frame t of the ring.
+     */
+    private void regressInto(double[][] ring, long t, double[] out, int offset) {
+        for (int i = 0; i < numCoeffs; i++) {
+            out[offset + i] = 0;
+        }
+        for (int n = 1; n <= window; n++) {
+            double[] ahead = ring[slot(t + n)];
+            double[] behind = ring[slot(t - n)];
+            for (int i = 0; i < numCoeffs; i++) {
+                out[offset + i] += n * (ahead[i] - behind[i]);
+            }
+        }
+        for (int i = 0; i < numCoeffs; i++) {
+            out[offset + i] /= norm;
+        }
+    }
+
+    private int slot(long t) {
+        int s = (int) (t % size);
+        return s < 0 ? s + size : s;
+    }
+}
@@ -0,0 +1,117 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the mean, variance, minimum and maximum of each feature over a sequence of
+ * feature frames, one frame at a time. The mean and variance are updated with Welford's
+ * method, which is numerically stable however many frames are added, and nothing is
+ * allocated per frame.
+ * <br><br>
+ * Statistics must only be updated by one thread at a time.
+ */
+public class FeatureStatistics {
+
+    /** The number of frames added. **/
+    private long count = 0;
+
+    /** The running mean of each feature. **/
+    private final double[] mean;
+
+    /** The running sum of squared deviations from the mean of each feature. **/
+    private final double[] m2;
+
+    /** The extremes of each feature. **/
+    private final double[] min, max;
+
+    /**
+     * Instantiates empty statistics.
+     * @param numFeatures the number of features in each frame
+     */
+    public FeatureStatistics(int numFeatures) {
+        mean = new double[numFeatures];
+        m2 = new double[numFeatures];
+        min = new double[numFeatures];
+        max = new double[numFeatures];
+        reset();
+    }
+
+    /**
+     * Adds a frame to the statistics.
+     * @param features the features of the frame, at least {@link #getNumFeatures()} long
+     */
+    public void add(double[] features) {
+        count++;
+        for (int i = 0; i < mean.length; i++) {
+            double x = features[i];
+            double delta = x - mean[i];
+            mean[i] += delta / count;
+            m2[i] += delta * (x - mean[i]);
+            if (x < min[i]) min[i] = x;
+            if (x > max[i]) max[i] = x;
+        }
+    }
+
+    /**
+     * Forgets all frames added so far.
+     */
+    public void reset() {
+        count = 0;
+        Arrays.fill(mean, 0);
+        Arrays.fill(m2, 0);
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Returns the number of features in each frame.
+     * @return the length of each statistic
+     */
+    public int getNumFeatures() {
+        return mean.length;
+    }
+
+    /**
+     * Returns the number of frames added since the last reset.
+     * @return the frame count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of a feature.
+     * @param feature the index of the feature
+     * @return the mean, 0 if no frames were added
+     */
+    public double getMean(int feature) {
+        return mean[feature];
+    }
+
+    /**
+     * Returns the population variance of a feature.
+     * @param feature the index of the feature
+     * @return the variance, 0 if fewer than two frames were added
+     */
+    public double getVariance(int feature) {
+        return count > 1 ? m2[feature] / count : 0;
+    }
+
+    /**
+     * Returns the smallest value of a feature.
+     * @param feature the index of the feature
+     * @return the minimum, positive infinity if no frames were added
+     */
+    public double getMin(int feature) {
+        return min[feature];
+    }
+
+    /**
+     * Returns the largest value of a feature.
+     * @param feature the index of the feature
+     * @return the maximum, negative infinity if no frames were added
+     */
+    public double getMax(int feature) {
+        return max[feature];
+    }
+}
@@ -0,0 +1,260 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.util.Arrays;
+
+/**
+ * A dense matrix stored row-major in a single flat array, for the per-frame linear algebra
+ * of the audio pipeline. Unlike {@link Matrix}, whose rows are separate arrays and whose
+ * operations always allocate their result, the products here write into a caller-supplied
+ * destination and a sub-matrix is a view sharing the same storage, so steady-state
+ * processing allocates nothing.
+ * <br><br>
+ * Element (i, j) is stored at {@code data[offset + i * stride + j]}. A matrix created with
+ * a constructor has {@code offset == 0} and {@code stride == cols}; a view keeps the stride
+ * of the matrix it was taken from.
+ * <br><br>
+ * Matrix products are cache-blocked: the operands are processed in tiles small enough to
+ * stay in the L1 cache, and the innermost loop walks rows of both the right operand and
+ * the result contiguously. Each element of a product is still accumulated in order of
+ * increasing inner index, so results are identical to those of {@link Matrix#times(Matrix)}.
+ *
+ * @see Matrix
+ */
+public class FlatMatrix {
+
+    /** The side of the square tiles used by {@link #timesInto(FlatMatrix, FlatMatrix)}. **/
+    private static final int BLOCK_SIZE = 64;
+
+    /** The storage, shared with any views. **/
+    public final double[] data;
+
+    /** The index in {@link #data} of element (0, 0). **/
+    public final int offset;
+
+    /** The number of rows. **/
+    public final int rows;
+
+    /** The number of columns. **/
+    public final int cols;
+
+    /** The distance in {@link #data} between the starts of consecutive rows. **/
+    public final int stride;
+
+    /**
+     * Constructs a matrix of zeros.
+     * @param rows the number of rows
+     * @param cols the number of columns
+     */
+    public FlatMatrix(int rows, int cols) {
+        this(new double[rows * cols], 0, rows, cols, cols);
+    }
+
+    /**
+     * Constructs a matrix backed by the given row-major array, without copying it.
+     * @param data the elements, row after row, at least rows * cols long
+     * @param rows the number of rows
+     * @param cols the number of columns
+     */
+    public FlatMatrix(double[] data, int rows, int cols) {
+        this(data, 0, rows, cols, cols);
+    }
+
+    private FlatMatrix(double[] data, int offset, int rows, int cols, int stride) {
+        if (rows < 0 || cols < 0 || (rows > 0 && offset + (rows - 1) * stride + cols > data.length)) {
+            throw new IllegalArgumentException("Matrix dimensions exceed the storage.");
+        }
+        this.data = data;
+        this.offset = offset;
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = stride;
+    }
+
+    /**
+     * Copies a {@link Matrix} into flat storage.
+     * @param matrix the matrix to copy
+     * @return a new flat matrix
+     */
+    public static FlatMatrix copyOf(Matrix matrix) {
+        int m = matrix.getRowDimension();
+        int n = matrix.getColumnDimension();
+        FlatMatrix X = new FlatMatrix(m, n);
+        double[][] A = matrix.getArray();
+        for (int i = 0; i < m; i++) {
+            System.arraycopy(A[i], 0, X.data, i * n, n);
+        }
+        return X;
+    }
+
+    /**
+     * Copies this matrix into a {@link Matrix}.
+     * @return a new matrix
+     */
+    public Matrix toMatrix() {
+        Matrix X = new Matrix(rows, cols);
+        double[][] A = X.getArray();
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(data, offset + i * stride, A[i], 0, cols);
+        }
+        return X;
+    }
+
+    public int getRowDimension() {
+        return rows;
+    }
+
+    public int getColumnDimension() {
+        return cols;
+    }
+
+    public double get(int i, int j) {
+        return data[offset + i * stride + j];
+    }
+
+    public void set(int i, int j, double s) {
+        data[offset + i * stride + j] = s;
+    }
+
+    /**
+     * Returns a view of a sub-matrix, which shares storage with this matrix. The indices
+     * are inclusive, as in {@link Matrix#getMatrix(int, int, int, int)}.
+     * @param i0 the initial row index
+     * @param i1 the final row index
+     * @param j0 the initial column index
+     * @param j1 the final column index
+     * @return a view of A(i0:i1, j0:j1)
+     */
+    public FlatMatrix view(int i0, int i1, int j0, int j1) {
+        if (i0 < 0 || i1 >= rows || i0 > i1 + 1 || j0 < 0 || j1 >= cols || j0 > j1 + 1) {
+            throw new ArrayIndexOutOfBoundsException("Submatrix indices");
+        }
+        return new FlatMatrix(data, offset + i0 * stride + j0, i1 - i0 + 1, j1 - j0 + 1, stride);
+    }
+
+    /**
+     * Sets every element to the given value.
+     * @param s the value
+     */
+    public void fill(double s) {
+        if (stride == cols) {
+            Arrays.fill(data, offset, offset + rows * cols, s);
+            return;
+        }
+        for (int i = 0; i < rows; i++) {
+            int start = offset + i * stride;
+            Arrays.fill(data, start, start + cols, s);
+        }
+    }
+
+    /**
+     * Matrix-vector multiplication, y = A * x.
+     * @param x a vector of {@link #cols} entries
+     * @param y receives the {@link #rows} entries of the product
+     */
+    public void timesVector(double[] x, double[] y) {
+        timesVector(x, 0, y, 0);
+    }
+
+    /**
+     * Matrix-vector multiplication, y = A * x, on slices of larger arrays.
+     * @param x the array holding the vector
+     * @param xOffset the index in x of the first entry of the vector
+     * @param y the array receiving the product
+     * @param yOffset the index in y of the first entry of the product
+     */
+    public void timesVector(double[] x, int xOffset, double[] y, int yOffset) {
+        for (int i = 0; i < rows; i++) {
+            int row = offset + i * stride;
+            double s = 0;
+            for (int j = 0; j < cols; j++) {
+                s += data[row + j] * x[xOffset + j];
+            }
+            y[yOffset + i] = s;
+        }
+    }
+
+    /**
+     * Linear algebraic matrix multiplication, A * B.
+     * @param B another matrix
+     * @return a new matrix holding A * B
+     */
+    public FlatMatrix times(FlatMatrix B) {
+        FlatMatrix C = new FlatMatrix(rows, B.cols);
+        timesInto(B, C);
+        return C;
+    }
+
+    /**
+     * Linear algebraic matrix multiplication into an existing matrix, C = A * B.
+     * @param B another matrix
+     * @param C receives the product; may be a view, but must not share storage with A or B
+     * @throws IllegalArgumentException if the dimensions do not agree
+     */
+    public void timesInto(FlatMatrix B, FlatMatrix C) {
+        if (B.rows != cols) {
+            throw new IllegalArgumentException("Matrix inner dimensions must agree.");
+        }
+        if (C.rows != rows || C.cols != B.cols) {
+            throw new IllegalArgumentException("Result dimensions must be " + rows + "x" + B.cols + ".");
+        }
+        if (C.data == data || C.data == B.data) {
+            throw new IllegalArgumentException("Result must not share storage with an operand.");
+        }
+        C.fill(0);
+        int n = cols;
+        int p = B.cols;
+        for (int i0 = 0; i0 < rows; i0 += BLOCK_SIZE) {
+            int i1 = Math.min(i0 + BLOCK_SIZE, rows);
+            for (int k0 = 0; k0 < n; k0 += BLOCK_SIZE) {
+                int k1 = Math.min(k0 + BLOCK_SIZE, n);
+                for (int j0 = 0; j0 < p; j0 += BLOCK_SIZE) {
+                    int j1 = Math.min(j0 + BLOCK_SIZE, p);
+                    multiplyBlock(B, C, i0, i1, k0, k1, j0, j1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accumulates A(i0:i1, k0:k1) * B(k0:k1, j0:j1) into C(i0:i1, j0:j1), upper bounds
+     * exclusive. Rows of C are updated four at a time so that each element of B loaded
+     * is used four times.
+     */
+    private void multiplyBlock(FlatMatrix B, FlatMatrix C, int i0, int i1, int k0, int k1, int j0, int j1) {
+        double[] b = B.data;
+        double[] c = C.data;
+        int i = i0;
+        for (; i + 4 <= i1; i += 4) {
+            int aRow = offset + i * stride;
+            int c0 = C.offset + i * C.stride;
+            int c1 = c0 + C.stride;
+            int c2 = c1 + C.stride;
+            int c3 = c2 + C.stride;
+            for (int k = k0; k < k1; k++) {
+                double a0 = data[aRow + k];
+                double a1 = data[aRow + stride + k];
+                double a2 = data[aRow + 2 * stride + k];
+                double a3 = data[aRow + 3 * stride + k];
+                int bRow = B.offset + k * B.stride;
+                for (int j = j0; j < j1; j++) {
+                    double bkj = b[bRow + j];
+                    c[c0 + j] += a0 * bkj;
+                    c[c1 + j] += a1 * bkj;
+                    c[c2 + j] += a2 * bkj;
+                    c[c3 + j] += a3 * bkj;
+                }
+            }
+        }
+        for (; i < i1; i++) {
+            int aRow = offset + i * stride;
+            int cRow = C.offset + i * C.stride;
+            for (int k = k0; k < k1; k++) {
+                double a = data[aRow + k];
+                int bRow = B.offset + k * B.stride;
+                for (int j = j0; j < j1; j++) {
+                    c[cRow + j] += a * b[bRow + j];
+                }
+            }
+        }
+    }
+}
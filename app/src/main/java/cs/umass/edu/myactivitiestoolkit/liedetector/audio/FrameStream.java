@@ -0,0 +1,108 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+/**
+ * Splits a continuous audio stream into frames for the stages which compute features from
+ * them. Samples delivered by the {@link MicrophoneRecorder} are kept in a ring buffer
+ * across callbacks, and a frame is processed as soon as each hop worth of new samples is
+ * available, rather than once per recorder buffer. Frames overlap if the hop is shorter
+ * than the frame.
+ * <br><br>
+ * Frames are processed on the thread that delivers the audio, and nothing is allocated
+ * per frame. A stage only implements {@link #processFrame(short[], long)}.
+ *
+ * @see MicrophoneRecorder.MicrophoneListener
+ */
+abstract class FrameStream implements MicrophoneRecorder.MicrophoneListener {
+
+    /** The number of samples in each frame. **/
+    protected final int frameLength;
+
+    /** The number of samples between the starts of consecutive frames. **/
+    private final int hopLength;
+
+    /** Holds the most recent frameLength samples. **/
+    private final short[] ring;
+
+    /** The current frame, unrolled from the ring buffer. **/
+    private final short[] frame;
+
+    /** The position in the ring at which the next sample is written. **/
+    private int writeIndex = 0;
+
+    /** The total number of samples received. **/
+    private long samplesReceived = 0;
+
+    /** The number of samples still required before the next frame is complete. **/
+    private int samplesPending;
+
+    /**
+     * Instantiates a frame stream.
+     * @param frameLength the number of samples in each frame
+     * @param hopLength the number of samples between the starts of consecutive frames
+     */
+    FrameStream(int frameLength, int hopLength) {
+        if (hopLength <= 0 || hopLength > frameLength) {
+            throw new IllegalArgumentException("Hop length must be in [1, " + frameLength + "].");
+        }
+        this.frameLength = frameLength;
+        this.hopLength = hopLength;
+        ring = new short[frameLength];
+        frame = new short[frameLength];
+        samplesPending = frameLength;
+    }
+
+    /**
+     * Discards any buffered samples, e.g. when recording is restarted.
+     */
+    public void reset() {
+        writeIndex = 0;
+        samplesReceived = 0;
+        samplesPending = frameLength;
+    }
+
+    /**
+     * Returns the number of samples received since the stream was created or reset.
+     * @return the index within the stream of the next sample
+     */
+    protected long getSamplesReceived() {
+        return samplesReceived;
+    }
+
+    @Override
+    public void microphoneBuffer(short[] buffer, int window_size) {
+        write(buffer, 0, window_size);
+    }
+
+    /**
+     * Appends samples to the stream, processing a frame for every completed hop.
+     * @param buffer the audio samples
+     * @param offset the index of the first sample to append
+     * @param length the number of samples to append
+     */
+    public void write(short[] buffer, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            // copy up to the next frame boundary or the end of the ring, whichever is first
+            int n = Math.min(end - offset, Math.min(samplesPending, frameLength - writeIndex));
+            System.arraycopy(buffer, offset, ring, writeIndex, n);
+            offset += n;
+            writeIndex = (writeIndex + n) % frameLength;
+            samplesReceived += n;
+            samplesPending -= n;
+            if (samplesPending == 0) {
+                int tail = frameLength - writeIndex;
+                System.arraycopy(ring, writeIndex, frame, 0, tail);
+                System.arraycopy(ring, 0, frame, tail, writeIndex);
+                processFrame(frame, samplesReceived - frameLength);
+                samplesPending = hopLength;
+            }
+        }
+    }
+
+    /**
+     * Called for every completed frame.
+     * @param frame the frameLength samples of the frame, oldest first; reused between calls
+     * @param frameStart the index within the stream of the first sample of the frame
+     */
+    protected abstract void processFrame(short[] frame, long frameStart);
+}
@@ -1,5 +1,7 @@
 package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
 
+import java.util.Arrays;
+
 /**
  * Represents a hamming window, used to ensure smoothness in the FFT signal.
  * For an explanation of why we use a Hamming window, see
@@ -15,6 +17,11 @@ public class HammingWindow
          */
         public double[] window;
 
+        /**
+         * The window in single precision, for {@link #applyWindow(short[], int, int, float[])}.
+         */
+        public float[] windowFloat;
+
     /**
      * The
      */
@@ -30,6 +37,11 @@ public class HammingWindow
                 {
                         window[i] = 0.54 - 0.46*Math.cos(2*Math.PI*(double)i/((double)n-1));
                 }
+                windowFloat = new float[n];
+                for(int i = 0; i < n; i++)
+                {
+                        windowFloat[i] = (float)window[i];
+                }
         }
 
         public void applyWindow(double[] buffer)
@@ -40,4 +52,48 @@ public class HammingWindow
                 }
         }
 
-}
\ No newline at end of file
+        /**
+         * Converts a frame of 16-bit samples to doubles and applies the window in a
+         * single pass. Entries of the buffer past the end of the frame are zeroed so
+         * the buffer can be handed directly to an FFT.
+         * @param data16bit the data buffer
+         * @param index the index into the data buffer indicating the start of the frame
+         * @param size the size of the frame
+         * @param buffer the destination buffer, typically the real part of an FFT input
+         */
+        public void applyWindow(short[] data16bit, int index, int size, double[] buffer)
+        {
+                int windowed = Math.min(size, n);
+                for (int i = 0; i < windowed; i ++)
+                {
+                        buffer[i] = data16bit[index+i]*window[i];
+                }
+                for (int i = windowed; i < size; i ++)
+                {
+                        buffer[i] = data16bit[index+i];
+                }
+                Arrays.fill(buffer, size, buffer.length, 0);
+        }
+
+        /**
+         * Single-precision version of {@link #applyWindow(short[], int, int, double[])}.
+         * @param data16bit the data buffer
+         * @param index the index into the data buffer indicating the start of the frame
+         * @param size the size of the frame
+         * @param buffer the destination buffer, typically the input of a float FFT
+         */
+        public void applyWindow(short[] data16bit, int index, int size, float[] buffer)
+        {
+                int windowed = Math.min(size, n);
+                for (int i = 0; i < windowed; i ++)
+                {
+                        buffer[i] = data16bit[index+i]*windowFloat[i];
+                }
+                for (int i = windowed; i < size; i ++)
+                {
+                        buffer[i] = data16bit[index+i];
+                }
+                Arrays.fill(buffer, size, buffer.length, 0);
+        }
+
+}
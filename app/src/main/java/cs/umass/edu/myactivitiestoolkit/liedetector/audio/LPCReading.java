@@ -0,0 +1,62 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Wraps a sequence of LPC feature frames computed on the phone into a sensor reading
+ * to send to the server. Each frame is {@link LPCStream#getNumFeatures()} values, in the
+ * order given by the {@link LPCStream} indices, preceded by the stream position of
+ * the frame.
+ *
+ * @see SensorReading
+ * @see LPCStream
+ */
+public class LPCReading extends SensorReading {
+
+    /** The frames, one after another. **/
+    private final double[] features;
+
+    /** The number of values in each frame, including its stream position. **/
+    private final int frameSize;
+
+    /**
+     * Instantiates an LPC reading.
+     *
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param deviceType describes the device.
+     * @param deviceID unique device identifier.
+     * @param t the timestamp at which the event occurred, in Unix time by convention.
+     * @param features the frames, each its stream position followed by its features; the
+     *                 reading takes ownership of the array
+     * @param frameSize the number of values in each frame, including its stream position
+     */
+    public LPCReading(String userID, String deviceType, String deviceID, long t, double[] features, int frameSize) {
+        super(userID, deviceType, deviceID, "SENSOR_AUDIO_LPC", t);
+        this.features = features;
+        this.frameSize = frameSize;
+    }
+
+    @Override
+    protected JSONObject toJSONObject() {
+        JSONObject obj = getBaseJSONObject();
+        JSONObject data = new JSONObject();
+        try {
+            data.put("t", timestamp);
+            data.put("frame_size", frameSize);
+            JSONArray values = new JSONArray();
+            for (double value : features) {
+                values.put(value);
+            }
+            data.put("values", values);
+            obj.put("data", data);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return obj;
+    }
+}
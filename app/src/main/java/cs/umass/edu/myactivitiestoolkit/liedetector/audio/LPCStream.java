@@ -0,0 +1,349 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.util.Arrays;
+
+/**
+ * Computes linear prediction (LPC) features over overlapping frames of a continuous audio
+ * stream: the first formants of the vocal tract and their bandwidths, the prediction
+ * error, and the LPC and reflection coefficients they are derived from. Formants shift
+ * with the tension of the vocal tract under stress, and a frame of them costs less to
+ * compute and to send than a frame of MFCCs.
+ * <br><br>
+ * Each frame is pre-emphasized, which flattens the spectral tilt of voiced speech, and
+ * multiplied by a {@link HammingWindow}. Its autocorrelation up to the order p is solved
+ * for the predictor A(z) = 1 + a[1] z^-1 + ... + a[p] z^-p by the Levinson-Durbin
+ * recursion, which also yields the reflection coefficients k[1..p], each in (-1, 1), and
+ * the residual energy. The formants are the roots of A(z) in the upper half plane: a root
+ * r e^(i theta) is a resonance at theta fs / (2 pi) Hz with a bandwidth of
+ * -ln(r) fs / pi Hz. Only roots above {@link #MIN_FORMANT} Hz and narrower than
+ * {@link #MAX_BANDWIDTH} Hz are formants. The lowest {@link #NUM_FORMANTS} are reported,
+ * and missing ones are 0.
+ * <br><br>
+ * The roots are found with the Durand-Kerner iteration, which refines all of them at
+ * once. The roots of the previous frame are a close starting point for the next one, so
+ * a frame usually takes a handful of iterations.
+ * <br><br>
+ * The order should be about 2 + fs / 1000, i.e. 10 at 8 kHz: two coefficients for each
+ * formant below the Nyquist frequency, plus two for the glottal source and radiation.
+ * For example, 30 ms frames with a 10 ms hop at 8 kHz are obtained with
+ * {@code new LPCStream(240, 80, 8000, 10)}.
+ * <br><br>
+ * Features are computed on the thread that delivers the audio, and nothing is allocated
+ * per frame. The feature buffer passed to {@link LPCListener#onLPCFrame(double[], long)}
+ * is reused for every frame, so listeners must copy it if they need to keep it.
+ *
+ * @see ProsodyStream
+ * @see MicrophoneRecorder.MicrophoneListener
+ */
+public class LPCStream extends FrameStream {
+
+    /** The number of formants reported for each frame. **/
+    public static final int NUM_FORMANTS = 3;
+
+    /** Index of the first formant frequency, in Hz; the others follow. **/
+    public static final int FORMANTS = 0;
+
+    /** Index of the bandwidth of the first formant, in Hz; the others follow. **/
+    public static final int BANDWIDTHS = FORMANTS + NUM_FORMANTS;
+
+    /** Index of the prediction error, the energy of the residual in dB relative to the frame. **/
+    public static final int PREDICTION_ERROR = BANDWIDTHS + NUM_FORMANTS;
+
+    /** Index of a[1]; the LPC coefficients a[1..p] follow, then the reflection coefficients. **/
+    public static final int COEFFICIENTS = PREDICTION_ERROR + 1;
+
+    /** Roots below this frequency, in Hz, model the glottal source rather than a formant. **/
+    public static final double MIN_FORMANT = 90;
+
+    /** Roots wider than this, in Hz, model the spectral envelope rather than a formant. **/
+    public static final double MAX_BANDWIDTH = 400;
+
+    /** The pre-emphasis coefficient: y[n] = x[n] - PRE_EMPHASIS x[n - 1]. **/
+    public static final double PRE_EMPHASIS = 0.97;
+
+    /** Added to the autocorrelation at lag 0, relative to it, so the recursion stays stable. **/
+    private static final double WHITE_NOISE_CORRECTION = 1e-9;
+
+    /** The lowest reported prediction error, in dB, to avoid log(0). **/
+    private static final double MIN_ERROR_DB = -100;
+
+    /** The maximum number of root-finding iterations for a frame. **/
+    private static final int MAX_ITERATIONS = 100;
+
+    /** The largest change of a root at which the iteration has converged. **/
+    private static final double TOLERANCE = 1e-10;
+
+    /** The sampling rate, in Hz. **/
+    private final int sampleRate;
+
+    /** The order p of the predictor. **/
+    private final int order;
+
+    private final HammingWindow window;
+
+    /** The pre-emphasized, windowed frame. **/
+    private final double[] frameBuffer;
+
+    /** The autocorrelation of the frame at lags 0 to p. **/
+    private final double[] autocorrelation;
+
+    /** The predictor a[0..p], with a[0] = 1, and the previous iteration of it. **/
+    private final double[] lpc, previousLpc;
+
+    /** The roots of A(z), carried over from frame to frame. **/
+    private final double[] rootRe, rootIm;
+
+    /** The frequency and bandwidth of the formant candidates of the current frame. **/
+    private final double[] candidateFrequency, candidateBandwidth;
+
+    /** The features of the current frame. **/
+    private final double[] features;
+
+    /** Whether {@link #rootRe} and {@link #rootIm} hold the converged roots of the previous frame. **/
+    private boolean rootsValid = false;
+
+    /** Registered listeners. **/
+    private final ListenerList<LPCListener> listeners = new ListenerList<LPCListener>(new LPCListener[0]);
+
+    /**
+     * Instantiates an LPC stream.
+     * @param frameLength the number of samples in each frame
+     * @param hopLength the number of samples between the starts of consecutive frames
+     * @param sampleRate the sampling rate of the audio, in Hz
+     * @param order the order p of the predictor, less than frameLength
+     */
+    public LPCStream(int frameLength, int hopLength, int sampleRate, int order) {
+        super(frameLength, hopLength);
+        if (order < 1 || order >= frameLength) {
+            throw new IllegalArgumentException("Order must be in [1, " + (frameLength - 1) + "].");
+        }
+        this.sampleRate = sampleRate;
+        this.order = order;
+        window = new HammingWindow(frameLength);
+        frameBuffer = new double[frameLength];
+        autocorrelation = new double[order + 1];
+        lpc = new double[order + 1];
+        previousLpc = new double[order + 1];
+        rootRe = new double[order];
+        rootIm = new double[order];
+        candidateFrequency = new double[order];
+        candidateBandwidth = new double[order];
+        features = new double[COEFFICIENTS + 2 * order];
+    }
+
+    public void registerListener(LPCListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unregisterListener(LPCListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Discards any buffered samples, e.g. when recording is restarted.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        rootsValid = false;
+    }
+
+    /**
+     * Returns the order of the predictor.
+     * @return the number of LPC coefficients, and of reflection coefficients, in each frame
+     */
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the number of features in each frame.
+     * @return {@link #COEFFICIENTS} + 2 * {@link #getOrder()}
+     */
+    public int getNumFeatures() {
+        return features.length;
+    }
+
+    /**
+     * Returns the index of the first reflection coefficient k[1]; k[2..p] follow.
+     * @return {@link #COEFFICIENTS} + {@link #getOrder()}
+     */
+    public int getReflectionIndex() {
+        return COEFFICIENTS + order;
+    }
+
+    /**
+     * Computes the features of a frame.
+     * @param frame the samples of the frame
+     * @param out receives {@link #getNumFeatures()} features
+     */
+    private void computeFeatures(short[] frame, double[] out) {
+        double previous = frame[0];
+        frameBuffer[0] = previous * (1 - PRE_EMPHASIS);
+        for (int i = 1; i < frameLength; i++) {
+            double sample = frame[i];
+            frameBuffer[i] = sample - PRE_EMPHASIS * previous;
+            previous = sample;
+        }
+        window.applyWindow(frameBuffer);
+
+        for (int lag = 0; lag <= order; lag++) {
+            double sum = 0;
+            for (int i = lag; i < frameLength; i++) {
+                sum += frameBuffer[i] * frameBuffer[i - lag];
+            }
+            autocorrelation[lag] = sum;
+        }
+
+        int reflection = COEFFICIENTS + order;
+        if (autocorrelation[0] <= 0) {
+            // a silent frame has no spectral envelope
+            Arrays.fill(out, 0);
+            out[PREDICTION_ERROR] = MIN_ERROR_DB;
+            rootsValid = false;
+            return;
+        }
+
+        // Levinson-Durbin recursion
+        double r0 = autocorrelation[0] * (1 + WHITE_NOISE_CORRECTION);
+        double error = r0;
+        Arrays.fill(lpc, 0);
+        lpc[0] = 1;
+        for (int i = 1; i <= order; i++) {
+            double acc = autocorrelation[i];
+            for (int j = 1; j < i; j++) {
+                acc += lpc[j] * autocorrelation[i - j];
+            }
+            double k = -acc / error;
+            System.arraycopy(lpc, 0, previousLpc, 0, i);
+            for (int j = 1; j < i; j++) {
+                lpc[j] = previousLpc[j] + k * previousLpc[i - j];
+            }
+            lpc[i] = k;
+            error *= 1 - k * k;
+            out[reflection + i - 1] = k;
+        }
+        for (int j = 1; j <= order; j++) {
+            out[COEFFICIENTS + j - 1] = lpc[j];
+        }
+        out[PREDICTION_ERROR] = error > 0 ? Math.max(MIN_ERROR_DB, 10 * Math.log10(error / r0)) : MIN_ERROR_DB;
+
+        findFormants(out);
+    }
+
+    /**
+     * Finds the roots of A(z) and writes the lowest formants and their bandwidths.
+     */
+    private void findFormants(double[] out) {
+        // start from the previous frame's roots, which are usually close, and from scratch if that fails
+        boolean converged = rootsValid && findRoots();
+        if (!converged) {
+            initializeRoots();
+            converged = findRoots();
+        }
+        rootsValid = converged;
+        if (!converged) {
+            Arrays.fill(out, FORMANTS, PREDICTION_ERROR, 0);
+            return;
+        }
+
+        // the formant candidates, kept sorted by frequency
+        int count = 0;
+        for (int i = 0; i < order; i++) {
+            if (rootIm[i] <= 0) continue;
+            double frequency = Math.atan2(rootIm[i], rootRe[i]) * sampleRate / (2 * Math.PI);
+            double bandwidth = -Math.log(Math.hypot(rootRe[i], rootIm[i])) * sampleRate / Math.PI;
+            if (frequency < MIN_FORMANT || bandwidth > MAX_BANDWIDTH) continue;
+            int j = count++;
+            while (j > 0 && candidateFrequency[j - 1] > frequency) {
+                candidateFrequency[j] = candidateFrequency[j - 1];
+                candidateBandwidth[j] = candidateBandwidth[j - 1];
+                j--;
+            }
+            candidateFrequency[j] = frequency;
+            candidateBandwidth[j] = bandwidth;
+        }
+        for (int f = 0; f < NUM_FORMANTS; f++) {
+            out[FORMANTS + f] = f < count ? candidateFrequency[f] : 0;
+            out[BANDWIDTHS + f] = f < count ? candidateBandwidth[f] : 0;
+        }
+    }
+
+    /**
+     * Spreads the starting points of the root search over powers of 0.4 + 0.9i, which are
+     * distinct and off the real axis, as the iteration requires.
+     */
+    private void initializeRoots() {
+        double re = 1, im = 0;
+        for (int i = 0; i < order; i++) {
+            double next = re * 0.4 - im * 0.9;
+            im = re * 0.9 + im * 0.4;
+            re = next;
+            rootRe[i] = re;
+            rootIm[i] = im;
+        }
+    }
+
+    /**
+     * Refines the roots of z^p + a[1] z^(p-1) + ... + a[p], whose roots are those of A(z),
+     * with the Durand-Kerner iteration.
+     * @return whether the iteration converged
+     */
+    private boolean findRoots() {
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            double maxChange = 0;
+            for (int i = 0; i < order; i++) {
+                double zr = rootRe[i], zi = rootIm[i];
+                // the polynomial at z, by Horner's rule
+                double pr = 1, pi = 0;
+                for (int j = 1; j <= order; j++) {
+                    double t = pr * zr - pi * zi + lpc[j];
+                    pi = pr * zi + pi * zr;
+                    pr = t;
+                }
+                // the product of z minus each of the other roots
+                double qr = 1, qi = 0;
+                for (int j = 0; j < order; j++) {
+                    if (j == i) continue;
+                    double dr = zr - rootRe[j], di = zi - rootIm[j];
+                    double t = qr * dr - qi * di;
+                    qi = qr * di + qi * dr;
+                    qr = t;
+                }
+                double denominator = qr * qr + qi * qi;
+                if (denominator == 0) return false;
+                double cr = (pr * qr + pi * qi) / denominator;
+                double ci = (pi * qr - pr * qi) / denominator;
+                rootRe[i] = zr - cr;
+                rootIm[i] = zi - ci;
+                maxChange = Math.max(maxChange, Math.abs(cr) + Math.abs(ci));
+            }
+            if (Double.isNaN(maxChange) || Double.isInfinite(maxChange)) return false;
+            if (maxChange < TOLERANCE) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Computes the features of a frame and notifies listeners.
+     */
+    @Override
+    protected void processFrame(short[] frame, long frameStart) {
+        computeFeatures(frame, features);
+        LPCListener[] current = listeners.get();
+        for (int i = 0; i < current.length; i++) {
+            current[i].onLPCFrame(features, frameStart);
+        }
+    }
+
+    public interface LPCListener {
+        /**
+         * Called for every completed frame.
+         * @param features the LPC features of the frame, indexed by {@link #FORMANTS},
+         *                 {@link #BANDWIDTHS}, {@link #PREDICTION_ERROR} and
+         *                 {@link #COEFFICIENTS}; reused between calls
+         * @param sampleIndex the index within the stream of the first sample of the frame
+         */
+        void onLPCFrame(double[] features, long sampleIndex);
+    }
+}
@@ -0,0 +1,329 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Scores feature frames on the phone with a compact binary model, so that a truth/lie
+ * verdict is available without a round trip to the server. The model is memory-mapped
+ * and its parameters are read in place, so loading costs no more than opening the file
+ * and scoring a frame allocates nothing.
+ * <br><br>
+ * The classifier listens to an {@link MFCCStream}, a {@link ProsodyStream} or an
+ * {@link LPCStream}, whichever the model was trained on, and accumulates the probability of truth over the
+ * frames it receives. {@link #takeVerdict()} turns the frames since the previous verdict
+ * into a label, using the same labels as the server, "truth" and "lie".
+ * <br><br>
+ * The model file is little-endian, with ints and floats of 4 bytes:
+ * <pre>
+ *     int magic            {@link #MAGIC}
+ *     int version          {@link #VERSION}
+ *     int modelType        {@link #LOGISTIC_REGRESSION} or {@link #TREE_ENSEMBLE}
+ *     int inputType        {@link #INPUT_MFCC}, {@link #INPUT_PROSODY} or {@link #INPUT_LPC}
+ *     int numFeatures
+ *     float mean[numFeatures], scale[numFeatures]
+ *                          features are standardized as (x - mean) * scale
+ *
+ *     logistic regression: float bias, weights[numFeatures]
+ *                          P(truth) = 1 / (1 + exp(-(bias + weights . x)))
+ *
+ *     tree ensemble:       int numTrees, then for each tree:
+ *                          int numNodes, then for each node, the root first:
+ *                          int feature, float threshold, int left, int right
+ *                          a node goes left if x[feature] <= threshold; a leaf has
+ *                          feature -1 and holds P(truth) in place of its threshold.
+ *                          P(truth) is the mean over the trees.
+ * </pre>
+ * Such a file is written from a trained scikit-learn model by
+ * {@code python/LD/export_model.py}.
+ * <br><br>
+ * A classifier keeps state between frames and must only be used by one thread at a time.
+ */
+public class LieClassifier implements MFCCStream.MFCCListener, ProsodyStream.ProsodyListener,
+        LPCStream.LPCListener {
+
+    /** The first 4 bytes of a model file, "LDM1". **/
+    public static final int MAGIC = 0x314D444C;
+
+    /** The version of the model format read by this class. **/
+    public static final int VERSION = 1;
+
+    /** Model type of a logistic regression. **/
+    public static final int LOGISTIC_REGRESSION = 0;
+
+    /** Model type of an ensemble of decision trees, e.g. a single tree or a random forest. **/
+    public static final int TREE_ENSEMBLE = 1;
+
+    /** Input type of a model which scores the frames of an {@link MFCCStream}. **/
+    public static final int INPUT_MFCC = 0;
+
+    /** Input type of a model which scores the frames of a {@link ProsodyStream}. **/
+    public static final int INPUT_PROSODY = 1;
+
+    /** Input type of a model which scores the frames of an {@link LPCStream}. **/
+    public static final int INPUT_LPC = 2;
+
+    /** The verdicts, as labelled by the server. **/
+    public static final String TRUTH = "truth", LIE = "lie";
+
+    /** The size in bytes of the fixed header. **/
+    private static final int HEADER_SIZE = 20;
+
+    /** The size in bytes of a tree node. **/
+    private static final int NODE_SIZE = 16;
+
+    /** The mapped model file. **/
+    private final ByteBuffer model;
+
+    private final int modelType;
+
+    private final int inputType;
+
+    private final int numFeatures;
+
+    /** The positions in {@link #model} of the standardization parameters. **/
+    private final int meanOffset, scaleOffset;
+
+    /** The position in {@link #model} of the bias and weights of a logistic regression. **/
+    private final int weightsOffset;
+
+    /** The position in {@link #model} of the root of each tree of an ensemble. **/
+    private final int[] treeOffsets;
+
+    /** The number of nodes in each tree of an ensemble. **/
+    private final int[] treeSizes;
+
+    /** The standardized features of the frame being scored. **/
+    private final double[] standardized;
+
+    /** The sum of P(truth) over the frames since the last verdict. **/
+    private double probabilitySum = 0;
+
+    /** The number of frames since the last verdict. **/
+    private int frames = 0;
+
+    /** The number of frames scored and the total time spent scoring them. **/
+    private long framesScored = 0, totalScoreNanos = 0;
+
+    /**
+     * Memory-maps a model file. The file may be closed or replaced once this returns.
+     * @param file the model file
+     * @return a classifier scoring with the model
+     * @throws IOException if the file cannot be read or is not a valid model
+     */
+    public static LieClassifier load(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            // the mapping remains valid after the channel is closed
+            return new LieClassifier(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Instantiates a classifier from a model already in memory, e.g. a mapped file.
+     * @param model the model, from its first byte to its limit; its byte order is changed
+     * @throws IOException if the buffer does not hold a valid model
+     */
+    public LieClassifier(ByteBuffer model) throws IOException {
+        this.model = model.order(ByteOrder.LITTLE_ENDIAN);
+        int size = model.limit();
+        if (size < HEADER_SIZE || model.getInt(0) != MAGIC) {
+            throw new IOException("Not a lie detector model.");
+        }
+        if (model.getInt(4) != VERSION) {
+            throw new IOException("Unsupported model version " + model.getInt(4) + ".");
+        }
+        modelType = model.getInt(8);
+        inputType = model.getInt(12);
+        numFeatures = model.getInt(16);
+        if (inputType != INPUT_MFCC && inputType != INPUT_PROSODY && inputType != INPUT_LPC) {
+            throw new IOException("Unknown model input type " + inputType + ".");
+        }
+        if (numFeatures <= 0 || HEADER_SIZE + 8L * numFeatures > size) {
+            throw new IOException("Invalid number of features " + numFeatures + ".");
+        }
+        meanOffset = HEADER_SIZE;
+        scaleOffset = meanOffset + 4 * numFeatures;
+        int paramsOffset = scaleOffset + 4 * numFeatures;
+
+        if (modelType == LOGISTIC_REGRESSION) {
+            if (paramsOffset + 4L * (numFeatures + 1) > size) {
+                throw new IOException("Truncated logistic regression model.");
+            }
+            weightsOffset = paramsOffset;
+            treeOffsets = null;
+            treeSizes = null;
+        } else if (modelType == TREE_ENSEMBLE) {
+            if (paramsOffset + 4 > size || model.getInt(paramsOffset) <= 0) {
+                throw new IOException("Tree ensemble has no trees.");
+            }
+            int numTrees = model.getInt(paramsOffset);
+            weightsOffset = -1;
+            treeOffsets = new int[numTrees];
+            treeSizes = new int[numTrees];
+            long position = paramsOffset + 4;
+            for (int t = 0; t < numTrees; t++) {
+                if (position + 4 > size) {
+                    throw new IOException("Truncated tree ensemble model.");
+                }
+                int numNodes = model.getInt((int) position);
+                if (numNodes <= 0 || position + 4 + (long) NODE_SIZE * numNodes > size) {
+                    throw new IOException("Invalid tree " + t + ".");
+                }
+                treeSizes[t] = numNodes;
+                treeOffsets[t] = (int) position + 4;
+                validateTree(treeOffsets[t], numNodes);
+                position += 4 + (long) NODE_SIZE * numNodes;
+            }
+        } else {
+            throw new IOException("Unknown model type " + modelType + ".");
+        }
+        standardized = new double[numFeatures];
+    }
+
+    /**
+     * Checks every node of a tree once, so that scoring cannot index outside the tree or
+     * the feature vector. Children must follow their parent, as in a scikit-learn tree,
+     * which also rules out cycles.
+     */
+    private void validateTree(int offset, int numNodes) throws IOException {
+        for (int node = 0; node < numNodes; node++) {
+            int position = offset + node * NODE_SIZE;
+            int feature = model.getInt(position);
+            if (feature < 0) continue;
+            int left = model.getInt(position + 8);
+            int right = model.getInt(position + 12);
+            if (feature >= numFeatures || left <= node || left >= numNodes || right <= node || right >= numNodes) {
+                throw new IOException("Invalid tree node " + node + ".");
+            }
+        }
+    }
+
+    /**
+     * Returns the kind of features the model was trained on.
+     * @return {@link #INPUT_MFCC}, {@link #INPUT_PROSODY} or {@link #INPUT_LPC}
+     */
+    public int getInputType() {
+        return inputType;
+    }
+
+    /**
+     * Returns the number of features the model expects in each frame.
+     * @return the length of a feature vector
+     */
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * Computes the probability that a frame is truthful speech.
+     * @param features the features of the frame
+     * @param offset the index in features of the first feature
+     * @return P(truth), between 0 and 1
+     */
+    public double score(double[] features, int offset) {
+        for (int i = 0; i < numFeatures; i++) {
+            double mean = model.getFloat(meanOffset + 4 * i);
+            double scale = model.getFloat(scaleOffset + 4 * i);
+            standardized[i] = (features[offset + i] - mean) * scale;
+        }
+        if (modelType == LOGISTIC_REGRESSION) {
+            double z = model.getFloat(weightsOffset);
+            for (int i = 0; i < numFeatures; i++) {
+                z += model.getFloat(weightsOffset + 4 * (i + 1)) * standardized[i];
+            }
+            return 1 / (1 + Math.exp(-z));
+        }
+        double sum = 0;
+        for (int t = 0; t < treeOffsets.length; t++) {
+            int base = treeOffsets[t];
+            int position = base;
+            int feature = model.getInt(position);
+            while (feature >= 0) {
+                int child = standardized[feature] <= model.getFloat(position + 4)
+                        ? model.getInt(position + 8) : model.getInt(position + 12);
+                position = base + child * NODE_SIZE;
+                feature = model.getInt(position);
+            }
+            sum += model.getFloat(position + 4);
+        }
+        return sum / treeOffsets.length;
+    }
+
+    /**
+     * Scores a frame and adds it to the current verdict. Frames with non-finite features,
+     * such as the cepstra of silent frames, are ignored.
+     * @param features the features of the frame, at least {@link #getNumFeatures()} long
+     */
+    public void addFrame(double[] features) {
+        for (int i = 0; i < numFeatures; i++) {
+            if (Double.isNaN(features[i]) || Double.isInfinite(features[i])) return;
+        }
+        long start = System.nanoTime();
+        double p = score(features, 0);
+        totalScoreNanos += System.nanoTime() - start;
+        framesScored++;
+        probabilitySum += p;
+        frames++;
+    }
+
+    @Override
+    public void onMFCCFrame(double[] features, long sampleIndex) {
+        addFrame(features);
+    }
+
+    /**
+     * Scores voiced frames only; the prosody of an unvoiced frame carries no information
+     * about the speaker.
+     */
+    @Override
+    public void onProsodyFrame(double[] features, long sampleIndex) {
+        if (features[ProsodyStream.F0] == 0) return;
+        addFrame(features);
+    }
+
+    /**
+     * Scores frames with at least one formant only; silent and noise-like frames have none.
+     */
+    @Override
+    public void onLPCFrame(double[] features, long sampleIndex) {
+        if (features[LPCStream.FORMANTS] == 0) return;
+        addFrame(features);
+    }
+
+    /**
+     * Returns the verdict on the frames scored since the previous call and starts a new one.
+     * @return {@link #TRUTH} if the mean probability of truth is at least 0.5, otherwise
+     *         {@link #LIE}, or null if no frames were scored
+     */
+    public String takeVerdict() {
+        if (frames == 0) return null;
+        double p = probabilitySum / frames;
+        probabilitySum = 0;
+        frames = 0;
+        return p >= 0.5 ? TRUTH : LIE;
+    }
+
+    /**
+     * Returns the mean time taken to score a frame.
+     * @return the mean scoring latency, in microseconds
+     */
+    public double getMeanScoreMicros() {
+        return framesScored == 0 ? 0 : totalScoreNanos / 1000.0 / framesScored;
+    }
+
+    /**
+     * Returns the number of frames scored since the classifier was loaded.
+     * @return the number of frames scored
+     */
+    public long getFramesScored() {
+        return framesScored;
+    }
+}
@@ -0,0 +1,51 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.util.Arrays;
+
+/**
+ * The listeners of an audio stage. The array is replaced on every change rather than
+ * modified, so the thread delivering the audio reads it without a lock and without
+ * allocating, while listeners are registered and unregistered from other threads.
+ *
+ * @param <L> the type of the listeners
+ */
+final class ListenerList<L> {
+
+    /** The registered listeners; never modified once published. **/
+    private volatile L[] listeners;
+
+    /**
+     * Instantiates an empty list.
+     * @param empty an empty array of the listener type
+     */
+    ListenerList(L[] empty) {
+        listeners = empty;
+    }
+
+    synchronized void add(L listener) {
+        L[] current = listeners;
+        L[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    synchronized void remove(L listener) {
+        L[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                L[] updated = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the listeners registered at the time of the call.
+     * @return the listeners, which must not be modified
+     */
+    L[] get() {
+        return listeners;
+    }
+}
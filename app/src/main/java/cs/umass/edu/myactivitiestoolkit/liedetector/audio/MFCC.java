@@ -1,5 +1,7 @@
 package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
 
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.DCT;
+
 public class MFCC
 {
         private static double minMelFreq = 0;
@@ -9,23 +11,27 @@ public class MFCC
         private int melBands;
         private int numFreqs;
         private double sampleRate;
-        public Matrix melWeights = null;
+        public MelFilterbank melFilters = null;
         public Matrix dctMat = null;
+        public FlatMatrix dct = null;
+        // Fast DCT-II, used instead of dct where it measured faster; null otherwise
+        private DCT fastDct = null;
         public double[] lifterWeights;
 
+        // Single-precision tables: the liftered DCT matrix, row-major
+        private float[] dctFloat;
+
         public MFCC(int fftSize, int numCoeffs, int melBands, double sampleRate)
         {
-            // Precompute mel-scale auditory perceptual spectrum
-            melWeights = new Matrix(melBands, fftSize, 0);
-            
             // Number of non-redundant frequency bins
             numFreqs = fftSize/2 + 1;
             this.numCoeffs = numCoeffs;
             this.melBands = melBands;
             this.sampleRate = sampleRate;
             
-            double fftFreqs[] = new double[fftSize];
-            for (int i = 0; i < fftSize; i ++)
+            // Only positive frequency parts of Fourier transform are needed
+            double fftFreqs[] = new double[numFreqs];
+            for (int i = 0; i < numFreqs; i ++)
             {
                 fftFreqs[i] = (double)i/(double)fftSize*this.sampleRate;
             }
@@ -39,18 +45,20 @@ public class MFCC
                 binFreqs[i] = fmel2hz(minMel + (double)i/((double)melBands + 1.0) * (maxMel - minMel));
             }
             
+            // Precompute mel-scale auditory perceptual spectrum
+            double melWeights[][] = new double[melBands][numFreqs];
             for (int i = 0; i < melBands; i ++)
             {
-                for (int j = 0; j < fftSize; j ++)
+                for (int j = 0; j < numFreqs; j ++)
                 {
                         double loSlope = (fftFreqs[j] - binFreqs[i])/(binFreqs[i+1] - binFreqs[i]);
                         double hiSlope = (binFreqs[i+2] - fftFreqs[j])/(binFreqs[i+2] - binFreqs[i+1]);
-                        melWeights.A[i][j] = Math.max(0, Math.min(loSlope, hiSlope));
+                        melWeights[i][j] = Math.max(0, Math.min(loSlope, hiSlope));
                 }
             }
             
-            // Keep only positive frequency parts of Fourier transform
-            melWeights = melWeights.getMatrix(0, melBands - 1, 0, numFreqs - 1);
+            // Each triangular filter only covers a few bins, so store it sparsely
+            melFilters = new MelFilterbank(melWeights);
             
             // Precompute DCT matrix
             dctMat = new Matrix(numCoeffs, melBands, 0);
@@ -68,6 +76,13 @@ public class MFCC
             {
                 dctMat.A[0][j] *= root2;
             }
+            dct = dctMat.toFlatMatrix();
+            // The fast kernel wins when most coefficients are kept or the bands are many;
+            // truncated to a few coefficients of 26-40 bands, the matrix is still faster
+            if (2*numCoeffs > melBands || melBands >= 64)
+            {
+                fastDct = new DCT(melBands);
+            }
             
             // Precompute liftering vector
             lifterWeights = new double[numCoeffs];
@@ -76,42 +91,115 @@ public class MFCC
             {
                 lifterWeights[i] = Math.pow((double)i, lifterExp);
             }
+
+            dctFloat = new float[numCoeffs*melBands];
+            for (int i = 0; i < numCoeffs; i ++)
+            {
+                for (int j = 0; j < melBands; j ++)
+                {
+                        dctFloat[i*melBands + j] = (float)(lifterWeights[i]*dctMat.A[i][j]);
+                }
+            }
         }
         
         public double[] cepstrum(double[] re, double[] im)
         {
-                Matrix powerSpec = new Matrix(numFreqs, 1);
+                double[] ceps = new double[numCoeffs];
+                cepstrum(re, im, new double[numFreqs], new double[melBands], ceps);
+                return ceps;
+        }
+
+        /**
+         * Computes the cepstrum without allocating. The arithmetic matches
+         * {@link #cepstrum(double[], double[])} exactly, but all intermediate
+         * results are written into the caller-supplied scratch buffers. The DCT
+         * is the matrix product with {@link #dctMat} or, for the shapes where it is
+         * faster, a {@link DCT}; the two agree to within rounding.
+         * @param re real part of the spectrum, at least numFreqs long
+         * @param im imaginary part of the spectrum, at least numFreqs long
+         * @param powerSpec scratch buffer of at least {@link #getNumFreqs()} entries
+         * @param melSpec scratch buffer of at least {@link #getMelBands()} entries
+         * @param ceps output buffer of at least {@link #getNumCoeffs()} entries
+         */
+        public void cepstrum(double[] re, double[] im, double[] powerSpec, double[] melSpec, double[] ceps)
+        {
                 for (int i = 0; i < numFreqs; i ++)
                 {
-                        powerSpec.A[i][0] = re[i]*re[i] + im[i]*im[i];
+                        powerSpec[i] = re[i]*re[i] + im[i]*im[i];
                 }
 
-                // melWeights - melBands x numFreqs
-                // powerSpec  - numFreqs x 1
-                // melWeights*powerSpec - melBands x 1
-                // aSpec      - melBands x 1
-                // dctMat     - numCoeffs x melBands
-                // dctMat*log(aSpec) - numCoeffs x 1
-                
-                Matrix aSpec = melWeights.times(powerSpec);
-                Matrix logMelSpec = new Matrix(melBands, 1);
+                // log(melWeights*powerSpec) - melBands x 1
+                melFilters.apply(powerSpec, melSpec);
                 for (int i = 0; i < melBands; i ++)
                 {
-                        logMelSpec.A[i][0] = Math.log(aSpec.A[i][0]);
+                        melSpec[i] = Math.log(melSpec[i]);
                 }
 
-                Matrix melCeps = dctMat.times(logMelSpec);
-                        
-                double[] ceps = new double[numCoeffs];
+                // dctMat*log(aSpec) - numCoeffs x 1, liftered
+                if (fastDct != null)
+                {
+                        fastDct.transform(melSpec, 0, ceps, numCoeffs);
+                }
+                else
+                {
+                        dct.timesVector(melSpec, ceps);
+                }
                 for (int i = 0; i < numCoeffs; i ++)
                 {
-                        ceps[i] = lifterWeights[i]*melCeps.A[i][0];
+                        ceps[i] *= lifterWeights[i];
                 }
+        }
 
-                return ceps;
+        /**
+         * Single-precision version of
+         * {@link #cepstrum(double[], double[], double[], double[], double[])}. The
+         * liftering is folded into the DCT, and only the result is widened to double.
+         * @param re real part of the spectrum, at least numFreqs long
+         * @param im imaginary part of the spectrum, at least numFreqs long
+         * @param powerSpec scratch buffer of at least {@link #getNumFreqs()} entries
+         * @param melSpec scratch buffer of at least {@link #getMelBands()} entries
+         * @param ceps output buffer of at least {@link #getNumCoeffs()} entries
+         */
+        public void cepstrum(float[] re, float[] im, float[] powerSpec, float[] melSpec, double[] ceps)
+        {
+                for (int i = 0; i < numFreqs; i ++)
+                {
+                        powerSpec[i] = re[i]*re[i] + im[i]*im[i];
+                }
+
+                melFilters.apply(powerSpec, melSpec);
+                for (int i = 0; i < melBands; i ++)
+                {
+                        melSpec[i] = (float)Math.log(melSpec[i]);
+                }
+
+                for (int i = 0; i < numCoeffs; i ++)
+                {
+                        int row = i*melBands;
+                        float s = 0;
+                        for (int j = 0; j < melBands; j ++)
+                        {
+                                s += dctFloat[row + j]*melSpec[j];
+                        }
+                        ceps[i] = s;
+                }
+        }
+
+        public int getNumCoeffs()
+        {
+                return numCoeffs;
+        }
+
+        public int getMelBands()
+        {
+                return melBands;
+        }
+
+        public int getNumFreqs()
+        {
+                return numFreqs;
         }
 
-        
         public double fmel2hz(double mel)
         {
                 return 700.0*(Math.pow(10.0, mel/2595.0) - 1.0);
@@ -0,0 +1,124 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.storage.WavReader;
+
+/**
+ * Computes MFCC features over a whole recording in parallel, e.g. when re-extracting
+ * features from a recorded corpus for offline retraining.
+ * <br><br>
+ * The recording is split into one contiguous range of frames per worker. Each worker owns
+ * its own {@link MFCCExtractor}, so no scratch state is shared, and writes directly into its
+ * slice of a single row-major {@code double[frames * coeffs]} result. Since the workers
+ * never contend, throughput scales with the number of cores.
+ *
+ * @see MFCCExtractor
+ * @see MFCCPlan
+ */
+public class MFCCBatch {
+
+    /**
+     * Returns the number of complete frames in a recording.
+     * @param numSamples the number of samples in the recording
+     * @param frameLength the number of samples in each frame
+     * @param hopLength the number of samples between the starts of consecutive frames
+     * @return the number of frames
+     */
+    public static int getFrameCount(int numSamples, int frameLength, int hopLength) {
+        if (numSamples < frameLength) return 0;
+        return (numSamples - frameLength) / hopLength + 1;
+    }
+
+    /**
+     * Computes the MFCC features of every frame of the recording, using one worker per core.
+     * @param samples the recording
+     * @param frameLength the number of samples in each frame
+     * @param hopLength the number of samples between the starts of consecutive frames
+     * @param sampleRate the sampling rate of the recording, in Hz
+     * @return the features, frame after frame, each {@link MFCCExtractor#getNumCoeffs()} long
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static double[] computeFeatures(short[] samples, int frameLength, int hopLength, int sampleRate)
+            throws InterruptedException {
+        int workers = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            return computeFeatures(samples, frameLength, hopLength, sampleRate, executor, workers);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Computes the MFCC features of every frame of the recording on the given executor.
+     * @param samples the recording
+     * @param frameLength the number of samples in each frame
+     * @param hopLength the number of samples between the starts of consecutive frames
+     * @param sampleRate the sampling rate of the recording, in Hz
+     * @param executor runs the workers
+     * @param workers the number of ranges to split the frames into
+     * @return the features, frame after frame, each {@link MFCCExtractor#getNumCoeffs()} long
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public static double[] computeFeatures(final short[] samples, final int frameLength, final int hopLength,
+                                           int sampleRate, ExecutorService executor, int workers)
+            throws InterruptedException {
+        final MFCCPlan plan = MFCCFeatureExtractor.getPlan(frameLength, sampleRate);
+        final int numCoeffs = plan.numCoeffs;
+        int numFrames = getFrameCount(samples.length, frameLength, hopLength);
+        final double[] features = new double[numFrames * numCoeffs];
+        if (numFrames == 0) return features;
+
+        workers = Math.max(1, Math.min(workers, numFrames));
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int first = (int) ((long) numFrames * w / workers);
+            final int last = (int) ((long) numFrames * (w + 1) / workers);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    MFCCExtractor extractor = plan.newExtractor();
+                    double[] cepstrum = new double[numCoeffs];
+                    for (int f = first; f < last; f++) {
+                        extractor.computeFeaturesForFrame(samples, frameLength, f * hopLength, cepstrum);
+                        System.arraycopy(cepstrum, 0, features, f * numCoeffs, numCoeffs);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw new RuntimeException("MFCC extraction failed.", e.getCause());
+        }
+        return features;
+    }
+
+    /**
+     * Reads a session recorded by the {@link cs.umass.edu.myactivitiestoolkit.liedetector.storage.WavWriter},
+     * or any 16-bit mono PCM WAV file.
+     * @param file the WAV file
+     * @return the samples, without the header
+     * @throws IOException if the file could not be read or is not a 16-bit mono PCM WAV file
+     * @see WavReader#getSampleRate()
+     */
+    public static short[] readSamples(File file) throws IOException {
+        return new WavReader(file).readSamples();
+    }
+}
@@ -0,0 +1,428 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.FFT;
+
+/**
+ * A reusable MFCC extractor which owns all of the scratch buffers required to compute
+ * the cepstrum of a frame. Once constructed, {@link #computeFeaturesForFrame(short[], int, int, double[])}
+ * does not allocate, so a single instance can process an unbounded audio stream without
+ * creating garbage.
+ * <br><br>
+ * The FFT, window and MFCC lookup tables are read-only and may be shared between
+ * extractors, but the scratch buffers are not: an extractor must only be used by one
+ * thread at a time. Use {@link MFCCFeatureExtractor#getExtractor()} to obtain an
+ * instance bound to the calling thread.
+ * <br><br>
+ * An extractor may instead run the whole window, FFT, mel, log and DCT chain in single
+ * precision, which halves the size of the scratch buffers and the memory traffic of large
+ * FFTs. The coefficients stay within about 1e-4 of the double-precision path for speech,
+ * which is far below the frame-to-frame variation of the features.
+ * <br><br>
+ * Besides the cepstrum, an extractor derives spectral centroid, roll-off, flux and
+ * flatness from the same FFT, and the zero-crossing rate from the samples. The features
+ * to compute are selected by a bitmask of {@link #FEATURE_MFCC} etc., and are written one
+ * after another, in the order of their bits, into a single output vector. A feature which
+ * is not selected costs nothing, and the FFT is skipped when only the zero-crossing rate
+ * is selected. The definitions follow those of the server, in
+ * {@code python/LD/audioFeatureExtraction.py}, but over the windowed spectrum:
+ * <ul>
+ *     <li>centroid: the magnitude-weighted mean frequency, as a fraction of the Nyquist frequency</li>
+ *     <li>roll-off: the frequency below which {@link #ROLLOFF_FRACTION} of the power lies,
+ *     as a fraction of the Nyquist frequency</li>
+ *     <li>flux: the squared distance between the sum-normalized magnitude spectra of this
+ *     frame and of the previous frame processed with flux selected, 0 for the first</li>
+ *     <li>flatness: the geometric mean of the power spectrum over its arithmetic mean,
+ *     from 0 for a pure tone to 1 for white noise</li>
+ *     <li>zero-crossing rate: the fraction of consecutive samples which change sign</li>
+ * </ul>
+ * If a {@link NoiseSuppressor} is set, it cleans the spectrum of each frame before any
+ * feature is computed from it.
+ *
+ * @see MFCCFeatureExtractor
+ * @see MFCC
+ */
+public class MFCCExtractor {
+
+    /** Selects the {@link #getNumCoeffs()} cepstral coefficients. **/
+    public static final int FEATURE_MFCC = 1;
+
+    /** Selects the spectral centroid. **/
+    public static final int FEATURE_CENTROID = 1 << 1;
+
+    /** Selects the spectral roll-off. **/
+    public static final int FEATURE_ROLLOFF = 1 << 2;
+
+    /** Selects the spectral flux. **/
+    public static final int FEATURE_FLUX = 1 << 3;
+
+    /** Selects the spectral flatness. **/
+    public static final int FEATURE_FLATNESS = 1 << 4;
+
+    /** Selects the zero-crossing rate. **/
+    public static final int FEATURE_ZCR = 1 << 5;
+
+    /** Selects every feature. **/
+    public static final int ALL_FEATURES = (1 << 6) - 1;
+
+    /** The fraction of the power below the roll-off frequency, as on the server. **/
+    public static final double ROLLOFF_FRACTION = 0.90;
+
+    /** The features computed from the spectrum rather than the cepstrum or the samples. **/
+    private static final int SPECTRAL_FEATURES = FEATURE_CENTROID | FEATURE_ROLLOFF | FEATURE_FLUX | FEATURE_FLATNESS;
+
+    /** Added to sums before dividing, as on the server. **/
+    private static final double EPS = 0.00000001;
+
+    /** The plan whose tables this extractor uses, if any. **/
+    private final MFCCPlan plan;
+
+    /** Computes the frequency spectrum of a frame. **/
+    private final FFT fft;
+
+    /** Smooths the frame before the FFT. **/
+    private final HammingWindow window;
+
+    /** Projects the power spectrum onto the mel scale and computes the cepstrum. **/
+    private final MFCC mfcc;
+
+    /** Whether the float buffers are used instead of the double buffers. **/
+    private final boolean singlePrecision;
+
+    /** The windowed, zero-padded frame. **/
+    private double[] frameBuffer;
+
+    /** Real part of the non-redundant half-spectrum. **/
+    private double[] fftBufferR;
+
+    /** Imaginary part of the non-redundant half-spectrum. **/
+    private double[] fftBufferI;
+
+    /** Scratch buffer holding the power spectrum. **/
+    private double[] powerSpec;
+
+    /** Scratch buffer holding the log mel spectrum. **/
+    private double[] melSpec;
+
+    /** Single-precision scratch buffers, in the same roles as the double buffers. **/
+    private float[] frameBufferF, fftBufferRF, fftBufferIF, powerSpecF, melSpecF;
+
+    /** The power spectrum for the spectral features of a single-precision extractor. **/
+    private double[] spectrum;
+
+    /** The magnitude spectrum of the current frame, for the centroid and the flux. **/
+    private double[] magnitude;
+
+    /** The sum-normalized magnitude spectrum of the previous frame, for the flux. **/
+    private double[] previousMagnitude;
+
+    /** Whether {@link #previousMagnitude} holds a frame. **/
+    private boolean hasPreviousFrame = false;
+
+    /** Suppresses noise in the spectrum of each frame, if set. **/
+    private NoiseSuppressor noiseSuppressor;
+
+    /**
+     * Instantiates an MFCC extractor over the given lookup tables.
+     * @param fft the FFT, whose size determines the length of the scratch buffers
+     * @param window the window applied to each frame
+     * @param mfcc the mel filterbank and DCT tables
+     */
+    public MFCCExtractor(FFT fft, HammingWindow window, MFCC mfcc) {
+        this(null, fft, window, mfcc, false);
+    }
+
+    /**
+     * Instantiates an MFCC extractor over the tables of a cached plan.
+     * @param plan the plan, which determines the frame and FFT sizes
+     * @see MFCCPlan#newExtractor()
+     */
+    public MFCCExtractor(MFCCPlan plan) {
+        this(plan, false);
+    }
+
+    /**
+     * Instantiates an MFCC extractor over the tables of a cached plan.
+     * @param plan the plan, which determines the frame and FFT sizes
+     * @param singlePrecision true to compute in float rather than double
+     * @see MFCCPlan#newExtractor(boolean)
+     */
+    public MFCCExtractor(MFCCPlan plan, boolean singlePrecision) {
+        this(plan, plan.fft, plan.window, plan.mfcc, singlePrecision);
+    }
+
+    private MFCCExtractor(MFCCPlan plan, FFT fft, HammingWindow window, MFCC mfcc, boolean singlePrecision) {
+        this.plan = plan;
+        this.fft = fft;
+        this.window = window;
+        this.mfcc = mfcc;
+        this.singlePrecision = singlePrecision;
+        if (singlePrecision) {
+            frameBufferF = new float[fft.getSize()];
+            fftBufferRF = new float[fft.getSize()/2 + 1];
+            fftBufferIF = new float[fft.getSize()/2 + 1];
+            powerSpecF = new float[mfcc.getNumFreqs()];
+            melSpecF = new float[mfcc.getMelBands()];
+        } else {
+            frameBuffer = new double[fft.getSize()];
+            fftBufferR = new double[fft.getSize()/2 + 1];
+            fftBufferI = new double[fft.getSize()/2 + 1];
+            powerSpec = new double[mfcc.getNumFreqs()];
+            melSpec = new double[mfcc.getMelBands()];
+        }
+    }
+
+    /**
+     * Returns the plan this extractor was built from.
+     * @return the plan, or null if the extractor was built from explicit tables
+     */
+    public MFCCPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Returns whether this extractor computes in single precision.
+     * @return true for float, false for double
+     */
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * Suppresses background noise in the spectrum of each frame before computing features.
+     * @param noiseSuppressor the suppressor, or null to use the spectrum as it is
+     * @throws IllegalArgumentException if the suppressor expects spectra of another FFT size
+     */
+    public void setNoiseSuppressor(NoiseSuppressor noiseSuppressor) {
+        if (noiseSuppressor != null && noiseSuppressor.getNumBins() != fft.getSize()/2 + 1) {
+            throw new IllegalArgumentException("The noise suppressor expects " + noiseSuppressor.getNumBins()
+                    + " bins, not " + (fft.getSize()/2 + 1) + ".");
+        }
+        this.noiseSuppressor = noiseSuppressor;
+    }
+
+    /**
+     * Returns the noise suppressor applied to each frame.
+     * @return the suppressor, or null if there is none
+     */
+    public NoiseSuppressor getNoiseSuppressor() {
+        return noiseSuppressor;
+    }
+
+    /**
+     * Returns the number of cepstral coefficients produced per frame.
+     * @return the length of the feature vector
+     */
+    public int getNumCoeffs() {
+        return mfcc.getNumCoeffs();
+    }
+
+    /**
+     * Returns the number of values produced per frame for the given selection of features.
+     * @param features a bitmask of {@link #FEATURE_MFCC} etc.
+     * @return the length of the feature vector
+     */
+    public int getNumFeatures(int features) {
+        int n = Integer.bitCount(features & ALL_FEATURES & ~FEATURE_MFCC);
+        return (features & FEATURE_MFCC) != 0 ? n + getNumCoeffs() : n;
+    }
+
+    /**
+     * Forgets the previous frame, so that the next spectral flux is 0, e.g. at the start of
+     * a new recording.
+     */
+    public void reset() {
+        hasPreviousFrame = false;
+    }
+
+    /**
+     * Computes the MFCC features over the specified frame of the given data buffer.
+     * @param data16bit the data buffer. Each data point is a 16-bit primitive (type short).
+     * @param size the size of the frame
+     * @param index The index into the data buffer indicating the start of the frame.
+     * @param cepstrum the output buffer, which must hold at least {@link #getNumCoeffs()} entries
+     */
+    public void computeFeaturesForFrame(short[] data16bit, int size, int index, double[] cepstrum) {
+        transform(data16bit, size, index);
+
+        // Get MFCCs
+        if (singlePrecision) {
+            mfcc.cepstrum(fftBufferRF, fftBufferIF, powerSpecF, melSpecF, cepstrum);
+        } else {
+            mfcc.cepstrum(fftBufferR, fftBufferI, powerSpec, melSpec, cepstrum);
+        }
+    }
+
+    /**
+     * Passes a frame which is not processed, e.g. one skipped as silence, to the noise
+     * suppressor, so that the noise estimate keeps following the background.
+     * @param data16bit the data buffer. Each data point is a 16-bit primitive (type short).
+     * @param size the size of the frame
+     * @param index The index into the data buffer indicating the start of the frame.
+     */
+    public void estimateNoise(short[] data16bit, int size, int index) {
+        if (noiseSuppressor != null) {
+            transform(data16bit, size, index);
+        }
+    }
+
+    /**
+     * Windows the frame, computes its FFT into the scratch buffers and suppresses noise.
+     */
+    private void transform(short[] data16bit, int size, int index) {
+        if (singlePrecision) {
+            window.applyWindow(data16bit, index, size, frameBufferF);
+            fft.realFft(frameBufferF, fftBufferRF, fftBufferIF);
+            if (noiseSuppressor != null) {
+                noiseSuppressor.process(data16bit, index, size, fftBufferRF, fftBufferIF);
+            }
+            return;
+        }
+
+        // Convert to doubles and window in one pass
+        window.applyWindow(data16bit, index, size, frameBuffer);
+
+        // Real-input FFT, only the non-redundant half of the spectrum is computed
+        fft.realFft(frameBuffer, fftBufferR, fftBufferI);
+
+        if (noiseSuppressor != null) {
+            noiseSuppressor.process(data16bit, index, size, fftBufferR, fftBufferI);
+        }
+    }
+
+    /**
+     * Computes the selected features over the specified frame of the given data buffer,
+     * from a single FFT of the frame.
+     * @param data16bit the data buffer. Each data point is a 16-bit primitive (type short).
+     * @param size the size of the frame
+     * @param index The index into the data buffer indicating the start of the frame.
+     * @param features a bitmask of {@link #FEATURE_MFCC} etc.
+     * @param out the output buffer, which must hold at least {@link #getNumFeatures(int)}
+     *            entries; the features are written in the order of their bits
+     */
+    public void computeFeaturesForFrame(short[] data16bit, int size, int index, int features, double[] out) {
+        int position = 0;
+        double[] power = null;
+        if ((features & (FEATURE_MFCC | SPECTRAL_FEATURES)) != 0) {
+            transform(data16bit, size, index);
+        }
+        if ((features & FEATURE_MFCC) != 0) {
+            if (singlePrecision) {
+                mfcc.cepstrum(fftBufferRF, fftBufferIF, powerSpecF, melSpecF, out);
+            } else {
+                // the cepstrum leaves the power spectrum behind for the spectral features
+                mfcc.cepstrum(fftBufferR, fftBufferI, powerSpec, melSpec, out);
+                power = powerSpec;
+            }
+            position = getNumCoeffs();
+        }
+        if ((features & SPECTRAL_FEATURES) != 0) {
+            if (power == null) {
+                power = powerSpectrum();
+            }
+            position = spectralFeatures(power, features, out, position);
+        }
+        if ((features & FEATURE_ZCR) != 0) {
+            out[position] = zeroCrossingRate(data16bit, index, size);
+        }
+    }
+
+    /**
+     * Computes the power spectrum of the last FFT, in double precision.
+     */
+    private double[] powerSpectrum() {
+        int numBins = fft.getSize() / 2;
+        if (!singlePrecision) {
+            for (int k = 0; k < numBins; k++) {
+                powerSpec[k] = fftBufferR[k] * fftBufferR[k] + fftBufferI[k] * fftBufferI[k];
+            }
+            return powerSpec;
+        }
+        if (spectrum == null) {
+            spectrum = new double[numBins];
+        }
+        for (int k = 0; k < numBins; k++) {
+            double re = fftBufferRF[k], im = fftBufferIF[k];
+            spectrum[k] = re * re + im * im;
+        }
+        return spectrum;
+    }
+
+    /**
+     * Computes the selected spectral features over bins 0 to n/2 - 1 of the power spectrum,
+     * i.e. up to but excluding the Nyquist frequency, as on the server.
+     * @return the position in out after the features written
+     */
+    private int spectralFeatures(double[] power, int features, double[] out, int position) {
+        int numBins = fft.getSize() / 2;
+        double totalPower = 0, totalMagnitude = 0, weightedMagnitude = 0;
+        if ((features & (FEATURE_CENTROID | FEATURE_FLUX)) != 0) {
+            if (magnitude == null) {
+                magnitude = new double[numBins];
+            }
+            for (int k = 0; k < numBins; k++) {
+                double m = Math.sqrt(power[k]);
+                magnitude[k] = m;
+                totalPower += power[k];
+                totalMagnitude += m;
+                weightedMagnitude += (k + 1) * m;
+            }
+        } else {
+            for (int k = 0; k < numBins; k++) {
+                totalPower += power[k];
+            }
+        }
+        if ((features & FEATURE_CENTROID) != 0) {
+            out[position++] = weightedMagnitude / (totalMagnitude + EPS) / numBins;
+        }
+        if ((features & FEATURE_ROLLOFF) != 0) {
+            double threshold = ROLLOFF_FRACTION * totalPower;
+            double cumulative = EPS;
+            int k = 0;
+            while (k < numBins && (cumulative += power[k]) <= threshold) {
+                k++;
+            }
+            out[position++] = k < numBins ? (double) k / numBins : 0;
+        }
+        if ((features & FEATURE_FLUX) != 0) {
+            if (previousMagnitude == null) {
+                previousMagnitude = new double[numBins];
+            }
+            double sum = totalMagnitude + numBins * EPS;
+            double flux = 0;
+            for (int k = 0; k < numBins; k++) {
+                double m = magnitude[k] / sum;
+                if (hasPreviousFrame) {
+                    double d = m - previousMagnitude[k];
+                    flux += d * d;
+                }
+                previousMagnitude[k] = m;
+            }
+            hasPreviousFrame = true;
+            out[position++] = flux;
+        }
+        if ((features & FEATURE_FLATNESS) != 0) {
+            double totalLog = 0;
+            for (int k = 0; k < numBins; k++) {
+                totalLog += Math.log(power[k] + EPS);
+            }
+            out[position++] = Math.exp(totalLog / numBins) / (totalPower / numBins + EPS);
+        }
+        return position;
+    }
+
+    /**
+     * Computes the fraction of consecutive samples of the frame whose signs differ, where
+     * 0 has a sign of its own. A frame of fewer than two samples has no crossings.
+     */
+    private static double zeroCrossingRate(short[] data16bit, int index, int size) {
+        if (size < 2) return 0;
+        int changes = 0;
+        int previous = Integer.signum(data16bit[index]);
+        for (int i = index + 1; i < index + size; i++) {
+            int sign = Integer.signum(data16bit[i]);
+            changes += Math.abs(sign - previous);
+            previous = sign;
+        }
+        return changes / 2.0 / (size - 1);
+    }
+}
@@ -1,20 +1,73 @@
 package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
 
-import java.util.Arrays;
-
-import cs.umass.edu.myactivitiestoolkit.liedetector.processing.FFT;
+import java.util.ArrayList;
+import java.util.List;
 
 public class MFCCFeatureExtractor {
 
 	
-	private static final int FFT_SIZE = 8192;
 	private static final int BITRATE = 8000;
     private static final int MFCCS_VALUE = 12;
     private static final int MEL_BANDS = 20;
-    
-    private static FFT featureFFT = new FFT(FFT_SIZE);
-    private static HammingWindow featureWin = new HammingWindow(BITRATE);
-    private static MFCC featureMFCC = new MFCC(FFT_SIZE, MFCCS_VALUE, MEL_BANDS, BITRATE);
+
+    /**
+     * The extractors used by each thread, one per frame size. The lookup tables are shared
+     * through {@link MFCCPlan}, only the scratch buffers are per thread.
+     */
+    private static final ThreadLocal<List<MFCCExtractor>> extractors = new ThreadLocal<List<MFCCExtractor>>() {
+        @Override
+        protected List<MFCCExtractor> initialValue() {
+            return new ArrayList<>();
+        }
+    };
+
+    /**
+     * Returns the plan used for frames of the given size. The FFT is the smallest power of 2
+     * that holds the frame, so short frames no longer pay for a full 8192-point transform.
+     * @param size the size of the frame
+     * @return the shared plan
+     */
+    public static MFCCPlan getPlan(int size) {
+        return getPlan(size, BITRATE);
+    }
+
+    /**
+     * Returns the plan used for frames of the given size recorded at the given sampling rate.
+     * @param size the size of the frame
+     * @param sampleRate the sampling rate, in Hz
+     * @return the shared plan
+     */
+    public static MFCCPlan getPlan(int size, double sampleRate) {
+        return MFCCPlan.getPlan(size, MEL_BANDS, MFCCS_VALUE, sampleRate);
+    }
+
+    /**
+     * Returns the MFCC extractor bound to the calling thread for frames of one second.
+     * @return the extractor for the current thread
+     */
+    public static MFCCExtractor getExtractor() {
+        return getExtractor(BITRATE);
+    }
+
+    /**
+     * Returns the MFCC extractor bound to the calling thread for frames of the given size.
+     * The extractor owns its scratch buffers, so repeated calls to
+     * {@link MFCCExtractor#computeFeaturesForFrame(short[], int, int, double[])} do not allocate.
+     * @param size the size of the frame
+     * @return the extractor for the current thread
+     */
+    public static MFCCExtractor getExtractor(int size) {
+        List<MFCCExtractor> cache = extractors.get();
+        for (int i = 0; i < cache.size(); i++) {
+            MFCCExtractor extractor = cache.get(i);
+            if (extractor.getPlan().frameSize == size) {
+                return extractor;
+            }
+        }
+        MFCCExtractor extractor = getPlan(size).newExtractor();
+        cache.add(extractor);
+        return extractor;
+    }
 
     /**
      * Computes the MFCC features over the specified frame of the given data buffer.
@@ -25,30 +78,38 @@ public class MFCCFeatureExtractor {
      */
     public static double[] computeFeaturesForFrame(short[] data16bit, int size, int index)
 	{
-		double[] fftBufferR = new double[FFT_SIZE];
-        double[] fftBufferI = new double[FFT_SIZE];
-        double[] featureCepstrum;
-
-        // Frequency analysis
-        Arrays.fill(fftBufferR, 0);
-        Arrays.fill(fftBufferI, 0);
-
-        // Convert audio buffer to doubles
-        for (int i = 0; i < size; i++)
-        {
-                fftBufferR[i] = data16bit[index+i];
-        }
-
-        // In-place windowing
-        featureWin.applyWindow(fftBufferR);
-
-        // In-place FFT
-        featureFFT.fft(fftBufferR, fftBufferI);
-
-        // Get MFCCs
-        featureCepstrum = featureMFCC.cepstrum(fftBufferR, fftBufferI);
-        
+        double[] featureCepstrum = new double[MFCCS_VALUE];
+        computeFeaturesForFrame(data16bit, size, index, featureCepstrum);
         return featureCepstrum;
 	}
 
+    /**
+     * Computes the MFCC features over the specified frame of the given data buffer
+     * without allocating.
+     * @param data16bit the data buffer. Each data point is a 16-bit primitive (type short).
+     * @param size the size of the frame
+     * @param index The index into the data buffer indicating the start of the frame.
+     * @param featureCepstrum the output buffer, which must hold at least 12 entries
+     */
+    public static void computeFeaturesForFrame(short[] data16bit, int size, int index, double[] featureCepstrum)
+    {
+        getExtractor(size).computeFeaturesForFrame(data16bit, size, index, featureCepstrum);
+    }
+
+    /**
+     * Computes the selected MFCC and spectral features over the specified frame of the
+     * given data buffer, from a single FFT and without allocating. The spectral flux is
+     * relative to the previous frame of the same size processed on the calling thread.
+     * @param data16bit the data buffer. Each data point is a 16-bit primitive (type short).
+     * @param size the size of the frame
+     * @param index The index into the data buffer indicating the start of the frame.
+     * @param features a bitmask of {@link MFCCExtractor#FEATURE_MFCC} etc.
+     * @param featureVector the output buffer, which must hold at least
+     *                      {@link MFCCExtractor#getNumFeatures(int)} entries
+     */
+    public static void computeFeaturesForFrame(short[] data16bit, int size, int index, int features, double[] featureVector)
+    {
+        getExtractor(size).computeFeaturesForFrame(data16bit, size, index, features, featureVector);
+    }
+
 }
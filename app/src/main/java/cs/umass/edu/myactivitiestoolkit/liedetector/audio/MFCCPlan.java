@@ -0,0 +1,182 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.FFT;
+
+/**
+ * Holds the read-only lookup tables needed to compute MFCCs for frames of a fixed size:
+ * the FFT twiddle tables, the Hamming window, the mel filterbank and the DCT matrix.
+ * <br><br>
+ * Plans are cached by (frame size, FFT size, mel bands, coefficient count, sample rate), so
+ * every caller asking for the same configuration shares one set of tables. FFTs and windows
+ * are additionally shared between plans of the same size. Plans are immutable and may be
+ * used from any thread; the per-frame scratch state lives in {@link MFCCExtractor}.
+ *
+ * @see MFCCExtractor
+ * @see MFCCFeatureExtractor
+ */
+public class MFCCPlan {
+
+    /** Plans which have already been built, keyed by their configuration. **/
+    private static final Map<Key, MFCCPlan> plans = new HashMap<>();
+
+    /** FFTs shared between plans, keyed by size. **/
+    private static final Map<Integer, FFT> ffts = new HashMap<>();
+
+    /** Windows shared between plans, keyed by size. **/
+    private static final Map<Integer, HammingWindow> windows = new HashMap<>();
+
+    /** The number of samples in each frame. **/
+    public final int frameSize;
+
+    /** The number of points in the FFT, a power of 2 no smaller than the frame size. **/
+    public final int fftSize;
+
+    /** The number of triangular mel filters. **/
+    public final int melBands;
+
+    /** The number of cepstral coefficients produced per frame. **/
+    public final int numCoeffs;
+
+    /** The sampling rate of the audio, in Hz. **/
+    public final double sampleRate;
+
+    /** Shared FFT twiddle tables. **/
+    public final FFT fft;
+
+    /** Shared window of length {@link #frameSize}. **/
+    public final HammingWindow window;
+
+    /** Mel filterbank and DCT tables. **/
+    public final MFCC mfcc;
+
+    private MFCCPlan(Key key) {
+        frameSize = key.frameSize;
+        fftSize = key.fftSize;
+        melBands = key.melBands;
+        numCoeffs = key.numCoeffs;
+        sampleRate = key.sampleRate;
+
+        FFT fft = ffts.get(fftSize);
+        if (fft == null) {
+            fft = new FFT(fftSize);
+            ffts.put(fftSize, fft);
+        }
+        this.fft = fft;
+
+        HammingWindow window = windows.get(frameSize);
+        if (window == null) {
+            window = new HammingWindow(frameSize);
+            windows.put(frameSize, window);
+        }
+        this.window = window;
+
+        mfcc = new MFCC(fftSize, numCoeffs, melBands, sampleRate);
+    }
+
+    /**
+     * Returns the plan for frames of the given size, using the smallest FFT that holds a
+     * whole frame.
+     * @param frameSize the number of samples in each frame
+     * @param melBands the number of mel filters
+     * @param numCoeffs the number of cepstral coefficients
+     * @param sampleRate the sampling rate, in Hz
+     * @return a shared plan
+     */
+    public static MFCCPlan getPlan(int frameSize, int melBands, int numCoeffs, double sampleRate) {
+        return getPlan(frameSize, nextPowerOfTwo(frameSize), melBands, numCoeffs, sampleRate);
+    }
+
+    /**
+     * Returns the plan for the given configuration, building it if necessary.
+     * @param frameSize the number of samples in each frame
+     * @param fftSize the number of points in the FFT, a power of 2 no smaller than the frame size
+     * @param melBands the number of mel filters
+     * @param numCoeffs the number of cepstral coefficients
+     * @param sampleRate the sampling rate, in Hz
+     * @return a shared plan
+     */
+    public static MFCCPlan getPlan(int frameSize, int fftSize, int melBands, int numCoeffs, double sampleRate) {
+        if (frameSize <= 0 || frameSize > fftSize) {
+            throw new IllegalArgumentException("Frame size must be in [1, " + fftSize + "].");
+        }
+        Key key = new Key(frameSize, fftSize, melBands, numCoeffs, sampleRate);
+        synchronized (plans) {
+            MFCCPlan plan = plans.get(key);
+            if (plan == null) {
+                plan = new MFCCPlan(key);
+                plans.put(key, plan);
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * Returns the smallest power of 2 which is greater than or equal to n.
+     * @param n a positive integer
+     * @return a power of 2
+     */
+    public static int nextPowerOfTwo(int n) {
+        int p = 1;
+        while (p < n) {
+            p <<= 1;
+        }
+        return p;
+    }
+
+    /**
+     * Creates an extractor with its own scratch buffers that shares this plan's tables.
+     * @return a new extractor, to be used by a single thread
+     */
+    public MFCCExtractor newExtractor() {
+        return new MFCCExtractor(this);
+    }
+
+    /**
+     * Creates an extractor with its own scratch buffers that shares this plan's tables.
+     * @param singlePrecision true to compute in float rather than double
+     * @return a new extractor, to be used by a single thread
+     */
+    public MFCCExtractor newExtractor(boolean singlePrecision) {
+        return new MFCCExtractor(this, singlePrecision);
+    }
+
+    /**
+     * Identifies a plan configuration.
+     */
+    private static final class Key {
+        private final int frameSize;
+        private final int fftSize;
+        private final int melBands;
+        private final int numCoeffs;
+        private final double sampleRate;
+
+        private Key(int frameSize, int fftSize, int melBands, int numCoeffs, double sampleRate) {
+            this.frameSize = frameSize;
+            this.fftSize = fftSize;
+            this.melBands = melBands;
+            this.numCoeffs = numCoeffs;
+            this.sampleRate = sampleRate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return frameSize == k.frameSize && fftSize == k.fftSize && melBands == k.melBands
+                    && numCoeffs == k.numCoeffs && Double.compare(sampleRate, k.sampleRate) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(sampleRate);
+            int h = frameSize;
+            h = 31 * h + fftSize;
+            h = 31 * h + melBands;
+            h = 31 * h + numCoeffs;
+            return 31 * h + (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Wraps a sequence of MFCC feature frames computed on the phone into a sensor reading
+ * to send to the server. This is far more compact than sending the raw audio in an
+ * {@link AudioBufferReading}.
+ *
+ * @see SensorReading
+ * @see MFCCStream
+ */
+public class MFCCReading extends SensorReading {
+
+    /** The features, frame after frame. **/
+    private final double[] features;
+
+    /** The number of features in each frame. **/
+    private final int numCoeffs;
+
+    /**
+     * Instantiates an MFCC reading.
+     *
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param deviceType describes the device.
+     * @param deviceID unique device identifier.
+     * @param t the timestamp at which the event occurred, in Unix time by convention.
+     * @param features the features, frame after frame; the reading takes ownership of the array
+     * @param numCoeffs the number of features in each frame
+     */
+    public MFCCReading(String userID, String deviceType, String deviceID, long t, double[] features, int numCoeffs) {
+        super(userID, deviceType, deviceID, "SENSOR_AUDIO_MFCC", t);
+        this.features = features;
+        this.numCoeffs = numCoeffs;
+    }
+
+    @Override
+    protected JSONObject toJSONObject() {
+        JSONObject obj = getBaseJSONObject();
+        JSONObject data = new JSONObject();
+        try {
+            data.put("t", timestamp);
+            data.put("coeffs", numCoeffs);
+            JSONArray values = new JSONArray();
+            for (double value : features) {
+                values.put(value);
+            }
+            data.put("values", values);
+            obj.put("data", data);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return obj;
+    }
+}
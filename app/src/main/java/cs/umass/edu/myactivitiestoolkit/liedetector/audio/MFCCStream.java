@@ -0,0 +1,125 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+/**
+ * Computes MFCC features over overlapping frames of a continuous audio stream. A feature
+ * frame is emitted as soon as each hop worth of new samples is available, rather than
+ * once per recorder buffer.
+ * <br><br>
+ * For example, 25 ms frames with a 10 ms hop at 8 kHz are obtained with
+ * {@code new MFCCStream(200, 80, 8000)}.
+ * <br><br>
+ * Features are computed on the thread that delivers the audio. The feature buffer passed
+ * to {@link MFCCListener#onMFCCFrame(double[], long)} is reused for every frame, so
+ * listeners must copy it if they need to keep it.
+ *
+ * @see MFCCExtractor
+ * @see MicrophoneRecorder.MicrophoneListener
+ */
+public class MFCCStream extends FrameStream {
+
+    /** Computes the features of each frame. **/
+    private final MFCCExtractor extractor;
+
+    /** The features of the current frame. **/
+    private final double[] features;
+
+    /** Skips frames without speech, if set. **/
+    private VoiceActivityDetector voiceActivityDetector;
+
+    /** Registered listeners. **/
+    private final ListenerList<MFCCListener> listeners = new ListenerList<MFCCListener>(new MFCCListener[0]);
+
+    /**
+     * Instantiates an MFCC stream.
+     * @param frameLength the number of samples in each frame
+     * @param hopLength the number of samples between the starts of consecutive frames
+     * @param sampleRate the sampling rate of the audio, in Hz
+     */
+    public MFCCStream(int frameLength, int hopLength, int sampleRate) {
+        this(frameLength, hopLength, sampleRate, false);
+    }
+
+    /**
+     * Instantiates an MFCC stream, optionally computing in single precision.
+     * @param frameLength the number of samples in each frame
+     * @param hopLength the number of samples between the starts of consecutive frames
+     * @param sampleRate the sampling rate of the audio, in Hz
+     * @param singlePrecision true to compute in float rather than double
+     * @see MFCCExtractor#isSinglePrecision()
+     */
+    public MFCCStream(int frameLength, int hopLength, int sampleRate, boolean singlePrecision) {
+        super(frameLength, hopLength);
+        extractor = MFCCFeatureExtractor.getPlan(frameLength, sampleRate).newExtractor(singlePrecision);
+        features = new double[extractor.getNumCoeffs()];
+    }
+
+    public void registerListener(MFCCListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unregisterListener(MFCCListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gates feature extraction on voice activity: frames without speech are neither
+     * processed nor passed on to the listeners. The detector adapts to every frame it
+     * classifies, so it must not be shared with another consumer of the same audio.
+     * @param voiceActivityDetector the detector, or null to process every frame
+     */
+    public void setVoiceActivityDetector(VoiceActivityDetector voiceActivityDetector) {
+        this.voiceActivityDetector = voiceActivityDetector;
+    }
+
+    /**
+     * Suppresses background noise in the spectrum of each frame before computing its
+     * features. Frames skipped as silence still update the noise estimate.
+     * @param noiseSuppressor the suppressor, built for {@link #getFFTSize()}, or null to
+     *                        compute the features of the frames as they are
+     */
+    public void setNoiseSuppressor(NoiseSuppressor noiseSuppressor) {
+        extractor.setNoiseSuppressor(noiseSuppressor);
+    }
+
+    /**
+     * Returns the size of the FFT of each frame.
+     * @return the number of points in the FFT
+     */
+    public int getFFTSize() {
+        return extractor.getPlan().fftSize;
+    }
+
+    /**
+     * Returns the number of features in each frame.
+     * @return the length of the feature vector
+     */
+    public int getNumFeatures() {
+        return features.length;
+    }
+
+    /**
+     * Computes the features of a frame and notifies listeners.
+     */
+    @Override
+    protected void processFrame(short[] frame, long frameStart) {
+        if (voiceActivityDetector != null && !voiceActivityDetector.isSpeech(frame, 0, frameLength)) {
+            extractor.estimateNoise(frame, frameLength, 0);
+            return;
+        }
+        extractor.computeFeaturesForFrame(frame, frameLength, 0, features);
+
+        MFCCListener[] current = listeners.get();
+        for (int i = 0; i < current.length; i++) {
+            current[i].onMFCCFrame(features, frameStart);
+        }
+    }
+
+    public interface MFCCListener {
+        /**
+         * Called for every completed frame.
+         * @param features the MFCC features of the frame; reused between calls
+         * @param sampleIndex the index within the stream of the first sample of the frame
+         */
+        void onMFCCFrame(double[] features, long sampleIndex);
+    }
+}
@@ -69,6 +69,11 @@ public class Matrix
    */
    private int m, n;
 
+   /** Products with at least this many columns are computed row by row rather than
+   as dot products.
+   */
+   private static final int ROW_PRODUCT_MIN_COLUMNS = 16;
+
 /* ------------------------
    Constructors
  * ------------------------ */
@@ -735,23 +740,49 @@ public class Matrix
       }
       Matrix X = new Matrix(m,B.n);
       double[][] C = X.getArray();
-      double[] Bcolj = new double[n];
-      for (int j = 0; j < B.n; j++) {
-         for (int k = 0; k < n; k++) {
-            Bcolj[k] = B.A[k][j];
-         }
-         for (int i = 0; i < m; i++) {
-            double[] Arowi = A[i];
-            double s = 0;
+      if (B.n < ROW_PRODUCT_MIN_COLUMNS) {
+         // few columns, e.g. a vector: one dot product per element
+         double[] Bcolj = new double[n];
+         for (int j = 0; j < B.n; j++) {
             for (int k = 0; k < n; k++) {
-               s += Arowi[k]*Bcolj[k];
+               Bcolj[k] = B.A[k][j];
+            }
+            for (int i = 0; i < m; i++) {
+               double[] Arowi = A[i];
+               double s = 0;
+               for (int k = 0; k < n; k++) {
+                  s += Arowi[k]*Bcolj[k];
+               }
+               C[i][j] = s;
+            }
+         }
+         return X;
+      }
+      // row by row, so that B and C are read in memory order; each element is still
+      // accumulated in increasing k, as in the dot products
+      for (int i = 0; i < m; i++) {
+         double[] Arowi = A[i];
+         double[] Crowi = C[i];
+         for (int k = 0; k < n; k++) {
+            double a = Arowi[k];
+            double[] Browk = B.A[k];
+            for (int j = 0; j < B.n; j++) {
+               Crowi[j] += a*Browk[j];
             }
-            C[i][j] = s;
          }
       }
       return X;
    }
 
+   /** Copy the elements into a row-major flat matrix, e.g. for repeated
+       products without allocation.
+   @return     FlatMatrix copy of A
+   */
+
+   public FlatMatrix toFlatMatrix () {
+      return FlatMatrix.copyOf(this);
+   }
+
    /** Matrix trace.
    @return     sum of the diagonal elements.
    */
@@ -0,0 +1,143 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.util.Arrays;
+
+/**
+ * A sparse bank of triangular mel filters. Each filter is non-zero over only a handful of
+ * consecutive frequency bins, so rather than storing a dense melBands x numFreqs matrix,
+ * only the first non-zero bin and the run of weights starting there are kept per band.
+ * <br><br>
+ * {@link #apply(double[], double[])} visits exactly the non-zero weights of the dense
+ * matrix in the same order, so the result is identical to the dense product.
+ *
+ * @see MFCC
+ */
+public class MelFilterbank {
+
+    /** The index of the first non-zero bin of each band. **/
+    private final int[] start;
+
+    /** The weights of each band, beginning at its start bin. **/
+    private final double[][] weights;
+
+    /** The weights in single precision, for {@link #apply(float[], float[])}. **/
+    private final float[][] weightsFloat;
+
+    /** The number of frequency bins the filterbank is defined over. **/
+    private final int numFreqs;
+
+    /**
+     * Compresses the rows of a dense filterbank.
+     * @param dense melBands x numFreqs filter weights
+     */
+    public MelFilterbank(double[][] dense) {
+        numFreqs = dense.length > 0 ? dense[0].length : 0;
+        start = new int[dense.length];
+        weights = new double[dense.length][];
+        weightsFloat = new float[dense.length][];
+        for (int i = 0; i < dense.length; i++) {
+            double[] row = dense[i];
+            int lo = 0;
+            while (lo < row.length && row[lo] == 0) lo++;
+            int hi = row.length;
+            while (hi > lo && row[hi - 1] == 0) hi--;
+            start[i] = lo;
+            weights[i] = Arrays.copyOfRange(row, lo, hi);
+            weightsFloat[i] = new float[hi - lo];
+            for (int k = lo; k < hi; k++) {
+                weightsFloat[i][k - lo] = (float) row[k];
+            }
+        }
+    }
+
+    /**
+     * Projects the power spectrum onto the mel bands.
+     * @param powerSpec the power spectrum, at least {@link #getNumFreqs()} long
+     * @param melSpec receives the energy in each band, at least {@link #getNumBands()} long
+     */
+    public void apply(double[] powerSpec, double[] melSpec) {
+        for (int i = 0; i < weights.length; i++) {
+            double[] w = weights[i];
+            int offset = start[i];
+            double s = 0;
+            for (int k = 0; k < w.length; k++) {
+                s += w[k] * powerSpec[offset + k];
+            }
+            melSpec[i] = s;
+        }
+    }
+
+    /**
+     * Single-precision version of {@link #apply(double[], double[])}.
+     * @param powerSpec the power spectrum, at least {@link #getNumFreqs()} long
+     * @param melSpec receives the energy in each band, at least {@link #getNumBands()} long
+     */
+    public void apply(float[] powerSpec, float[] melSpec) {
+        for (int i = 0; i < weightsFloat.length; i++) {
+            float[] w = weightsFloat[i];
+            int offset = start[i];
+            float s = 0;
+            for (int k = 0; k < w.length; k++) {
+                s += w[k] * powerSpec[offset + k];
+            }
+            melSpec[i] = s;
+        }
+    }
+
+    /**
+     * Returns the number of mel bands.
+     * @return the number of filters
+     */
+    public int getNumBands() {
+        return weights.length;
+    }
+
+    /**
+     * Returns the number of frequency bins the filterbank is defined over.
+     * @return the length of the expected power spectrum
+     */
+    public int getNumFreqs() {
+        return numFreqs;
+    }
+
+    /**
+     * Returns the index of the first bin with a non-zero weight in the given band.
+     * @param band the band index
+     * @return a bin index
+     */
+    public int getStartBin(int band) {
+        return start[band];
+    }
+
+    /**
+     * Returns the index one past the last bin with a non-zero weight in the given band.
+     * @param band the band index
+     * @return a bin index
+     */
+    public int getEndBin(int band) {
+        return start[band] + weights[band].length;
+    }
+
+    /**
+     * Returns the weight of the given bin in the given band.
+     * @param band the band index
+     * @param bin the frequency bin
+     * @return the filter weight, zero outside the band's support
+     */
+    public double getWeight(int band, int bin) {
+        int k = bin - start[band];
+        return k >= 0 && k < weights[band].length ? weights[band][k] : 0;
+    }
+
+    /**
+     * Expands the filterbank back into a dense matrix.
+     * @return a melBands x numFreqs matrix
+     */
+    public Matrix toMatrix() {
+        Matrix dense = new Matrix(weights.length, numFreqs);
+        for (int i = 0; i < weights.length; i++) {
+            System.arraycopy(weights[i], 0, dense.A[i], start[i], weights[i].length);
+        }
+        return dense;
+    }
+}
@@ -1,6 +1,8 @@
 package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
 
-import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
 import android.media.AudioFormat;
@@ -14,12 +16,23 @@ import android.util.Log;
  *
  * This class represents a Thread that once started continuously collects audio.
  * MicrophoneListeners can register to get audio buffers when they become available
- * This class currently notifies listeners when it have 1s worth of data.
+ * By default this class notifies listeners when it have 1s worth of data. For real-time
+ * feedback, {@link #configure(int, int)} selects a low-latency mode which delivers much
+ * smaller buffers, e.g. every 10-20 ms, and the age of each buffer when it reaches the
+ * listeners is measured, see {@link #getMeanLatencyMicros()}.
+ * 
+ * Capture never waits on listeners. Audio is read into a small pool of buffers which are
+ * handed to a separate dispatch thread; that thread notifies the listeners and returns the
+ * buffer to the pool. If every pooled buffer is still waiting to be dispatched, the newest
+ * buffer of audio, one period long, is dropped and counted instead of stalling
+ * AudioRecord.read. Listeners
+ * must therefore copy the buffer if they need it after microphoneBuffer returns.
  * 
  * Do not directly create an instance of this Thread. Use the static getInstance method instead
  * This will ensure that only one MicrophoneRecorder thread is alive at any give time
  * When all interested parties have unregistered, MicrophoneExecutor(debug)/VoiceExecutor(production) 
  * 	will call the stopRecording Method, at which point the instance member var is set to null.
+ * The same happens when capture fails, e.g. without permission to record audio.
  * Subsequent calls will then create a new Thread.  
  *
  */
@@ -28,22 +41,85 @@ public class MicrophoneRecorder extends Thread{
 	@SuppressWarnings("unused")
 	private static final String TAG = MicrophoneRecorder.class.getName();
 
+	/** The minimum number of pooled buffers, i.e. how far dispatch may fall behind capture. */
+	private static final int MIN_BUFFER_POOL_SIZE = 4;
+
+	/** The number of read periods the AudioRecord buffer can hold in low-latency mode. */
+	private static final int READ_PERIODS_PER_RECORD_BUFFER = 4;
+
 	private Context context;
 	
 	public static int frequency = 8000;
 	public static int channelConfiguration = AudioFormat.CHANNEL_CONFIGURATION_MONO;
 	public static int audioEncoding = AudioFormat.ENCODING_PCM_16BIT;
 
+	/** The duration of audio in each buffer delivered to the listeners. */
+	public static int periodMillis = 1000;
+
+	/**
+	 * Sets the sampling rate and the duration of each buffer delivered to the listeners.
+	 * Takes effect the next time recording is started from a new instance.
+	 * @param sampleRate the sampling rate, in Hz
+	 * @param periodMillis the duration of each buffer, e.g. 1000 for the default mode or
+	 *                     10-20 for low-latency capture
+	 */
+	public static void configure(int sampleRate, int periodMillis){
+		frequency = sampleRate;
+		MicrophoneRecorder.periodMillis = periodMillis;
+	}
+
+	/** The number of samples in each buffer delivered to the listeners. */
+	private final int periodSamples;
+
+	/** Empty buffers available to the capture thread. */
+	private final BlockingQueue<AudioChunk> freeBuffers;
+
+	/** Full buffers waiting to be dispatched to the listeners. */
+	private final BlockingQueue<AudioChunk> fullBuffers;
+
 	private MicrophoneRecorder(Context context){
 		this.context = context;
+		periodSamples = Math.max(1, (int) ((long) frequency * periodMillis / 1000));
+		// pool at least a second of audio, so short periods get as much slack as long ones
+		int poolSize = Math.max(MIN_BUFFER_POOL_SIZE, 1000 / Math.max(1, periodMillis));
+		freeBuffers = new ArrayBlockingQueue<AudioChunk>(poolSize);
+		fullBuffers = new ArrayBlockingQueue<AudioChunk>(poolSize);
+		for (int i = 0; i < poolSize; i++){
+			freeBuffers.offer(new AudioChunk(periodSamples));
+		}
 	}
 	
-	public static MicrophoneRecorder instance = null;
+	public static volatile MicrophoneRecorder instance = null;
 	
-	private final LinkedList<MicrophoneListener> listeners = new LinkedList<MicrophoneListener>();
-	private boolean isRecording = false;
+	/** Registered listeners, read by dispatch without a lock. */
+	private final ListenerList<MicrophoneListener> listeners = new ListenerList<MicrophoneListener>(new MicrophoneListener[0]);
+	private volatile boolean isRecording = false;
+
+	/** Set by the capture thread once it will not queue any more buffers. */
+	private volatile boolean captureFinished = false;
+
+	/** The number of buffers delivered to the listeners. */
+	private volatile long buffersDelivered = 0;
+
+	/** The number of buffers dropped because dispatch fell behind capture. */
+	private volatile long buffersDropped = 0;
+
+	/** The age of the most recent buffer when it reached the listeners, in microseconds. */
+	private volatile long lastLatencyMicros = 0;
+
+	/** The largest buffer age seen by the listeners, in microseconds. */
+	private volatile long maxLatencyMicros = 0;
+
+	/** The sum of all buffer ages, in microseconds. */
+	private volatile long totalLatencyMicros = 0;
+
+	/** Whether the dispatch thread has been started and has not yet finished, guarded by this. */
+	private boolean dispatching = false;
+
+	/** Run on the dispatch thread once it has delivered its last buffer, guarded by this. */
+	private Runnable onStopped = null;
 	
-	public static MicrophoneRecorder getInstance(Context context){
+	public static synchronized MicrophoneRecorder getInstance(Context context){
 		if (instance ==null){
 			instance = new MicrophoneRecorder(context);
 		}
@@ -53,65 +129,238 @@ public class MicrophoneRecorder extends Thread{
 	public boolean isRecording(){
 		return isRecording;
 	}
+
+	/**
+	 * Returns the number of buffers delivered to the listeners.
+	 * @return the number of buffers dispatched so far
+	 */
+	public long getBuffersDelivered(){
+		return buffersDelivered;
+	}
+
+	/**
+	 * Returns the number of buffers dropped because the listeners could not keep up.
+	 * @return the number of buffers discarded so far
+	 */
+	public long getBuffersDropped(){
+		return buffersDropped;
+	}
+
+	/**
+	 * Returns the number of samples in each buffer delivered to the listeners.
+	 * @return the buffer size
+	 */
+	public int getPeriodSamples(){
+		return periodSamples;
+	}
+
+	/**
+	 * Returns the capture-to-listener latency of the most recent buffer: the time from the
+	 * start of the read that captured its first sample until it was handed to the listeners.
+	 * This includes the buffer duration itself but not the AudioRecord's internal buffering.
+	 * @return the latency, in microseconds
+	 */
+	public long getLastLatencyMicros(){
+		return lastLatencyMicros;
+	}
+
+	/**
+	 * Returns the mean capture-to-listener latency, see {@link #getLastLatencyMicros()}.
+	 * @return the mean latency, in microseconds
+	 */
+	public long getMeanLatencyMicros(){
+		long delivered = buffersDelivered;
+		return delivered == 0 ? 0 : totalLatencyMicros / delivered;
+	}
+
+	/**
+	 * Returns the largest capture-to-listener latency, see {@link #getLastLatencyMicros()}.
+	 * @return the maximum latency, in microseconds
+	 */
+	public long getMaxLatencyMicros(){
+		return maxLatencyMicros;
+	}
 	
 	public void registerListener(MicrophoneListener listener){
-		synchronized(listeners){
-			listeners.add(listener);
-		}
+		listeners.add(listener);
 	}
 	
 	public void unregisterListener(MicrophoneListener listener){
-		synchronized(listeners){
-			listeners.remove(listener);
-		}
+		listeners.remove(listener);
 	}
 	
 	public void stopRecording(){
-		if (isRecording){
-			isRecording = false;
-			instance = null;			
+		stopRecording(null);
+	}
+
+	/**
+	 * Stops recording, then runs a task once no listener can be notified any more: on the
+	 * dispatch thread after it has delivered its last buffer, or right away on the calling
+	 * thread if nothing is being dispatched. Listeners may use it to release what they write
+	 * to from microphoneBuffer without racing the buffer in flight.
+	 * @param onStopped the task, or null
+	 */
+	public void stopRecording(Runnable onStopped){
+		isRecording = false;
+		// also when capture has already failed, so that the next getInstance starts afresh
+		releaseInstance();
+		if (onStopped == null){
+			return;
+		}
+		synchronized(this){
+			if (dispatching){
+				this.onStopped = onStopped;
+				return;
+			}
 		}
+		onStopped.run();
 	}
 	
 	public void startRecording(){
-		if (!isRecording){
+		if (!isRecording && getState() == State.NEW){
 			isRecording = true;
-			instance.start();	
+			start();
+		}
+	}
+
+	/**
+	 * Forgets this recorder as the running instance, since a finished Thread cannot be
+	 * started again.
+	 */
+	private void releaseInstance(){
+		synchronized (MicrophoneRecorder.class){
+			if (instance == this){
+				instance = null;
+			}
 		}
 	}
 
 	public void run() {
+		Thread dispatcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				dispatch();
+			}
+		}, TAG + ":dispatch");
 		try {
-			// Create a new AudioRecord object to record the audio.
-			int bufferSize = frequency;//AudioRecord.getMinBufferSize(frequency, channelConfiguration, audioEncoding);
+			// Create a new AudioRecord object to record the audio. Its buffer must be at least
+			// the platform minimum, and hold a few periods so short reads never overrun.
+			int minBufferSize = AudioRecord.getMinBufferSize(frequency, channelConfiguration, audioEncoding);
+			int bufferSize = periodMillis < 1000 ? 2 * READ_PERIODS_PER_RECORD_BUFFER * periodSamples : frequency;
+			if (minBufferSize > 0){
+				bufferSize = Math.max(bufferSize, minBufferSize);
+			}
 			AudioRecord audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, frequency,
 					channelConfiguration, audioEncoding, bufferSize);
 
-			short[] buffer = new short[bufferSize];
+			// Captures audio that is going to be dropped, so that reading never stops
+			AudioChunk overflow = new AudioChunk(periodSamples);
+			synchronized(this){
+				dispatching = true;
+			}
+			dispatcher.start();
+
 			Log.d(TAG,"VoiceService:MR: audioRecord.startRecording()");
 			audioRecord.startRecording();
+			AudioChunk chunk = null;
 			int offset = 0;
-			int bufferReadResult =0;
 			while (isRecording) {
-				bufferReadResult += audioRecord.read(buffer, offset, bufferSize - bufferReadResult);
-				offset += bufferReadResult;
-				if (bufferReadResult == frequency){
-					for(MicrophoneListener listener : listeners){
-						listener.microphoneBuffer(buffer,bufferReadResult);
+				if (chunk == null){
+					chunk = freeBuffers.poll();
+					if (chunk == null){
+						chunk = overflow;
+					}
+					chunk.captureStart = System.nanoTime();
+				}
+				int read = audioRecord.read(chunk.samples, offset, periodSamples - offset);
+				if (read < 0){
+					Log.d(TAG, "VoiceService:MR: AudioRecord.read failed with " + read);
+					break;
+				}
+				offset += read;
+				if (offset == periodSamples){
+					if (chunk == overflow){
+						buffersDropped++;
+					} else {
+						fullBuffers.offer(chunk);
 					}
-					offset =0;
-					bufferReadResult = 0;
+					chunk = null;
+					offset = 0;
 				}
 				// maybe sleep to save battery
 			}
 			audioRecord.stop();
+			audioRecord.release();
 		} catch (Exception e) {
 			e.printStackTrace();
 			Log.d(TAG,"VoiceService:MR: Recording Failed. Make sure you have given permission to record audio.");
+		} finally {
+			// the dispatcher drains the remaining buffers, then exits
+			isRecording = false;
+			captureFinished = true;
+			releaseInstance();
+		}
+	}
+
+	/**
+	 * Delivers full buffers to the listeners and returns them to the pool. Runs on its own
+	 * thread so that slow listeners never delay capture.
+	 */
+	private void dispatch() {
+		try {
+			// not isRecording, which is cleared while the last buffer may still be being read
+			while (!captureFinished || !fullBuffers.isEmpty()) {
+				AudioChunk chunk = fullBuffers.poll(1, TimeUnit.SECONDS);
+				if (chunk == null) continue;
+				long latency = (System.nanoTime() - chunk.captureStart) / 1000;
+				lastLatencyMicros = latency;
+				totalLatencyMicros += latency;
+				if (latency > maxLatencyMicros) maxLatencyMicros = latency;
+
+				MicrophoneListener[] current = listeners.get();
+				for (MicrophoneListener listener : current){
+					try {
+						listener.microphoneBuffer(chunk.samples, chunk.samples.length);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				}
+				buffersDelivered++;
+				freeBuffers.offer(chunk);
+			}
+		} catch (InterruptedException e) {
+			Log.d(TAG, "VoiceService:MR: dispatch interrupted.");
+		}
+		Log.d(TAG, "VoiceService:MR: " + buffersDelivered + " buffers delivered, " + buffersDropped + " dropped, "
+				+ getMeanLatencyMicros() + " us mean latency.");
+		Runnable task;
+		synchronized(this){
+			dispatching = false;
+			task = onStopped;
+			onStopped = null;
+		}
+		if (task != null){
+			task.run();
+		}
+	}
+
+	/**
+	 * A pooled buffer and the time at which capture into it began.
+	 */
+	private static final class AudioChunk {
+		final short[] samples;
+		long captureStart;
+
+		AudioChunk(int size){
+			samples = new short[size];
 		}
 	}
 	
 	public interface MicrophoneListener{
+		/**
+		 * Called on the dispatch thread for every full buffer. The buffer is reused once
+		 * this method returns, so copy it if it is needed afterwards.
+		 */
 		void microphoneBuffer(short[] buffer, int window_size);
 	}
 }
@@ -0,0 +1,195 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.util.Arrays;
+
+/**
+ * Suppresses stationary background noise in the spectrum of each frame, before features
+ * are computed from it. The suppressor works on the FFT which the {@link MFCCExtractor}
+ * computes anyway, so it costs a pass over the bins rather than a transform of its own.
+ * <br><br>
+ * The noise power of each bin is a running average over the frames which a
+ * {@link VoiceActivityDetector} classifies as non-speech. Each bin is then scaled by a
+ * Wiener gain xi / (1 + xi), where the a priori SNR xi is estimated with the
+ * decision-directed method of Ephraim and Malah: mostly from the clean power of the bin in
+ * the previous frame, and partly from how far its power in this frame exceeds the noise.
+ * This behaves like spectral subtraction in steady noise, but avoids the isolated
+ * residual peaks, or musical noise, which plain subtraction leaves behind. The gain never
+ * falls below {@link #GAIN_FLOOR}, so that no bin is zeroed and the log mel energies stay
+ * finite. Until the first non-speech frame, the spectrum is left unchanged.
+ * <br><br>
+ * All state is allocated up front: two values per bin, whatever the length of the stream.
+ * A suppressor must only be used by one thread at a time.
+ *
+ * @see MFCCExtractor#setNoiseSuppressor(NoiseSuppressor)
+ */
+public class NoiseSuppressor {
+
+    /** The weight of the previous noise estimate in each update, a time constant of 20 frames. **/
+    public static final double NOISE_SMOOTHING = 0.95;
+
+    /**
+     * The weight of the previous frame in the decision-directed a priori SNR. This is lower
+     * than the usual 0.98, which assumes heavily overlapping frames: consecutive MFCC
+     * frames do not overlap, so the previous frame predicts the current one less well.
+     */
+    public static final double DECISION_DIRECTED = 0.8;
+
+    /** The lowest gain applied to a bin, about -10 dB in power. **/
+    public static final double GAIN_FLOOR = 0.3;
+
+    /** Keeps the SNR finite in bins without noise. **/
+    private static final double EPS = 1e-10;
+
+    /** The number of bins of the spectrum, fftSize / 2 + 1. **/
+    private final int numBins;
+
+    /** Classifies frames as speech or noise. **/
+    private final VoiceActivityDetector voiceActivityDetector;
+
+    /** The estimated noise power of each bin. **/
+    private final double[] noise;
+
+    /** The power of each bin of the previous frame after suppression. **/
+    private final double[] previousClean;
+
+    /** Whether {@link #noise} holds an estimate. **/
+    private boolean hasNoise = false;
+
+    /** The number of frames processed, and how many of them updated the noise estimate. **/
+    private long framesProcessed = 0, noiseFrames = 0;
+
+    /** The total time spent processing frames. **/
+    private long totalNanos = 0;
+
+    /**
+     * Instantiates a noise suppressor.
+     * @param fftSize the size of the FFT whose spectra are processed
+     * @param hangoverFrames the number of frames still treated as speech after speech ends,
+     *                       so that the tails of words do not leak into the noise estimate
+     */
+    public NoiseSuppressor(int fftSize, int hangoverFrames) {
+        numBins = fftSize / 2 + 1;
+        voiceActivityDetector = new VoiceActivityDetector(hangoverFrames);
+        noise = new double[numBins];
+        previousClean = new double[numBins];
+    }
+
+    /**
+     * Returns the number of bins of the spectra processed.
+     * @return fftSize / 2 + 1
+     */
+    public int getNumBins() {
+        return numBins;
+    }
+
+    /**
+     * Forgets the noise estimate and the clean power of the previous frame, e.g. when
+     * recording moves to another room.
+     */
+    public void reset() {
+        voiceActivityDetector.reset();
+        hasNoise = false;
+        Arrays.fill(previousClean, 0);
+    }
+
+    /**
+     * Updates the noise estimate if the frame is not speech, then suppresses the noise in
+     * its spectrum.
+     * @param data16bit the data buffer holding the frame
+     * @param index the index into the data buffer indicating the start of the frame
+     * @param size the size of the frame
+     * @param re the real part of the spectrum of the frame, modified in place
+     * @param im the imaginary part of the spectrum of the frame, modified in place
+     */
+    public void process(short[] data16bit, int index, int size, double[] re, double[] im) {
+        long start = System.nanoTime();
+        if (!voiceActivityDetector.isSpeech(data16bit, index, size)) {
+            for (int k = 0; k < numBins; k++) {
+                updateNoise(k, re[k] * re[k] + im[k] * im[k]);
+            }
+            hasNoise = true;
+            noiseFrames++;
+        }
+        if (hasNoise) {
+            for (int k = 0; k < numBins; k++) {
+                double gain = gain(k, re[k] * re[k] + im[k] * im[k]);
+                re[k] *= gain;
+                im[k] *= gain;
+            }
+        }
+        framesProcessed++;
+        totalNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Single-precision version of {@link #process(short[], int, int, double[], double[])}.
+     * @param data16bit the data buffer holding the frame
+     * @param index the index into the data buffer indicating the start of the frame
+     * @param size the size of the frame
+     * @param re the real part of the spectrum of the frame, modified in place
+     * @param im the imaginary part of the spectrum of the frame, modified in place
+     */
+    public void process(short[] data16bit, int index, int size, float[] re, float[] im) {
+        long start = System.nanoTime();
+        if (!voiceActivityDetector.isSpeech(data16bit, index, size)) {
+            for (int k = 0; k < numBins; k++) {
+                updateNoise(k, (double) re[k] * re[k] + (double) im[k] * im[k]);
+            }
+            hasNoise = true;
+            noiseFrames++;
+        }
+        if (hasNoise) {
+            for (int k = 0; k < numBins; k++) {
+                float gain = (float) gain(k, (double) re[k] * re[k] + (double) im[k] * im[k]);
+                re[k] *= gain;
+                im[k] *= gain;
+            }
+        }
+        framesProcessed++;
+        totalNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Adds the power of a bin in a non-speech frame to its noise estimate.
+     */
+    private void updateNoise(int k, double power) {
+        noise[k] = hasNoise ? NOISE_SMOOTHING * noise[k] + (1 - NOISE_SMOOTHING) * power : power;
+    }
+
+    /**
+     * Computes the Wiener gain of a bin and remembers its clean power for the next frame.
+     */
+    private double gain(int k, double power) {
+        double noisePower = noise[k] + EPS;
+        double posteriori = power / noisePower;
+        double priori = DECISION_DIRECTED * previousClean[k] / noisePower
+                + (1 - DECISION_DIRECTED) * Math.max(posteriori - 1, 0);
+        double gain = Math.max(GAIN_FLOOR, priori / (1 + priori));
+        previousClean[k] = gain * gain * power;
+        return gain;
+    }
+
+    /**
+     * Returns the number of frames processed.
+     * @return the frame count, including noise frames
+     */
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+
+    /**
+     * Returns the number of frames which updated the noise estimate.
+     * @return the count of non-speech frames
+     */
+    public long getNoiseFrames() {
+        return noiseFrames;
+    }
+
+    /**
+     * Returns the mean time taken to process a frame, including the classification.
+     * @return the CPU cost per frame in microseconds, 0 if no frame was processed
+     */
+    public double getMeanProcessMicros() {
+        return framesProcessed == 0 ? 0 : totalNanos / 1000.0 / framesProcessed;
+    }
+}
@@ -0,0 +1,272 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import java.util.Arrays;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.FFT;
+
+/**
+ * Computes prosodic features over overlapping frames of a continuous audio stream: the
+ * fundamental frequency (F0), its voicing strength, jitter, shimmer and energy. These are
+ * the vocal stress cues used for deception analysis, and a frame of them is a handful of
+ * numbers rather than hundreds of samples.
+ * <br><br>
+ * F0 is estimated from the autocorrelation of the windowed frame, computed with two real
+ * FFTs: the power spectrum of the zero-padded frame, and the transform of that power
+ * spectrum. The autocorrelation is divided by that of the window, which removes the taper
+ * bias towards short lags. Since a periodic signal also correlates at multiples of its
+ * period, each peak within the F0 range is penalized by {@link #OCTAVE_COST} per octave
+ * below the highest F0, and the best peak is refined by parabolic interpolation. A frame
+ * is voiced if that peak exceeds {@link #VOICING_THRESHOLD}.
+ * <br><br>
+ * Jitter and shimmer are the relative differences of the pitch period and of the RMS
+ * amplitude between consecutive voiced frames. They are frame-level approximations of the
+ * cycle-to-cycle measures, and are 0 unless both frames are voiced.
+ * <br><br>
+ * For example, 40 ms frames with a 10 ms hop at 8 kHz are obtained with
+ * {@code new ProsodyStream(320, 80, 8000)}. A frame must be long enough to hold a few
+ * periods of the lowest F0, {@link #MIN_F0} Hz.
+ * <br><br>
+ * Features are computed on the thread that delivers the audio, and nothing is allocated
+ * per frame. The feature buffer passed to {@link ProsodyListener#onProsodyFrame(double[], long)}
+ * is reused for every frame, so listeners must copy it if they need to keep it.
+ *
+ * @see MFCCStream
+ * @see MicrophoneRecorder.MicrophoneListener
+ */
+public class ProsodyStream extends FrameStream {
+
+    /** Index of the fundamental frequency in Hz, 0 for unvoiced frames. **/
+    public static final int F0 = 0;
+
+    /** Index of the normalized autocorrelation at the pitch period, in [0, 1]. **/
+    public static final int VOICING = 1;
+
+    /** Index of the relative change of the pitch period from the previous voiced frame. **/
+    public static final int JITTER = 2;
+
+    /** Index of the relative change of the RMS amplitude from the previous voiced frame. **/
+    public static final int SHIMMER = 3;
+
+    /** Index of the frame energy, in dB relative to a sample of amplitude 1. **/
+    public static final int ENERGY = 4;
+
+    /** The number of features in each frame. **/
+    public static final int NUM_FEATURES = 5;
+
+    /** The lowest fundamental frequency searched, in Hz. **/
+    public static final double MIN_F0 = 75;
+
+    /** The highest fundamental frequency searched, in Hz. **/
+    public static final double MAX_F0 = 400;
+
+    /** The normalized autocorrelation peak above which a frame is voiced. **/
+    public static final double VOICING_THRESHOLD = 0.45;
+
+    /** The penalty per octave of lag, which favors the pitch over its subharmonics. **/
+    public static final double OCTAVE_COST = 0.02;
+
+    /** Frames quieter than this, in dB, are unvoiced regardless of their autocorrelation. **/
+    private static final double SILENCE_DB = 20;
+
+    /** The lowest reported energy, in dB, to avoid log(0). **/
+    private static final double MIN_ENERGY_DB = -30;
+
+    /** The sampling rate, in Hz. **/
+    private final int sampleRate;
+
+    /** The shortest and longest pitch periods searched, in samples. **/
+    private final int minLag, maxLag;
+
+    private final FFT fft;
+
+    private final HammingWindow window;
+
+    /** The normalized autocorrelation of the window, by lag. **/
+    private final double[] windowAutocorrelation;
+
+    /** The windowed, zero-padded frame, then the power spectrum of the frame. **/
+    private final double[] frameBuffer;
+
+    /** The spectrum of the frame, then its autocorrelation. **/
+    private final double[] re, im;
+
+    /** The features of the current frame. **/
+    private final double[] features = new double[NUM_FEATURES];
+
+    /** The pitch period and RMS amplitude of the previous frame, 0 if it was unvoiced. **/
+    private double previousPeriod = 0, previousAmplitude = 0;
+
+    /** Registered listeners. **/
+    private final ListenerList<ProsodyListener> listeners = new ListenerList<ProsodyListener>(new ProsodyListener[0]);
+
+    /**
+     * Instantiates a prosody stream.
+     * @param frameLength the number of samples in each frame
+     * @param hopLength the number of samples between the starts of consecutive frames
+     * @param sampleRate the sampling rate of the audio, in Hz
+     */
+    public ProsodyStream(int frameLength, int hopLength, int sampleRate) {
+        super(frameLength, hopLength);
+        minLag = (int) Math.floor(sampleRate / MAX_F0);
+        maxLag = (int) Math.ceil(sampleRate / MIN_F0);
+        if (frameLength <= maxLag + 1) {
+            throw new IllegalArgumentException("Frame length must exceed " + (maxLag + 1)
+                    + " samples to hold a period of " + MIN_F0 + " Hz.");
+        }
+        this.sampleRate = sampleRate;
+
+        // pad to twice the frame so that the circular autocorrelation does not wrap around
+        int fftSize = MFCCPlan.nextPowerOfTwo(2 * frameLength);
+        fft = new FFT(fftSize);
+        window = new HammingWindow(frameLength);
+        frameBuffer = new double[fftSize];
+        re = new double[fftSize / 2 + 1];
+        im = new double[fftSize / 2 + 1];
+
+        windowAutocorrelation = new double[maxLag + 2];
+        System.arraycopy(window.window, 0, frameBuffer, 0, frameLength);
+        autocorrelate();
+        for (int lag = 0; lag < windowAutocorrelation.length; lag++) {
+            windowAutocorrelation[lag] = re[lag] / re[0];
+        }
+    }
+
+    public void registerListener(ProsodyListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unregisterListener(ProsodyListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Discards any buffered samples, e.g. when recording is restarted.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        previousPeriod = 0;
+        previousAmplitude = 0;
+    }
+
+    /**
+     * Returns the number of features in each frame.
+     * @return {@link #NUM_FEATURES}
+     */
+    public int getNumFeatures() {
+        return NUM_FEATURES;
+    }
+
+    /**
+     * Computes the features of a frame.
+     * @param frame the samples of the frame
+     * @param out receives {@link #NUM_FEATURES} features
+     */
+    private void computeFeatures(short[] frame, double[] out) {
+        double sum = 0, sumSquares = 0;
+        for (int i = 0; i < frameLength; i++) {
+            double sample = frame[i];
+            sum += sample;
+            sumSquares += sample * sample;
+        }
+        double meanSquare = sumSquares / frameLength;
+        double energyDb = meanSquare > 0 ? Math.max(MIN_ENERGY_DB, 10 * Math.log10(meanSquare)) : MIN_ENERGY_DB;
+        double amplitude = Math.sqrt(meanSquare);
+
+        // remove DC, which would otherwise dominate the autocorrelation at every lag
+        double mean = sum / frameLength;
+        double[] w = window.window;
+        for (int i = 0; i < frameLength; i++) {
+            frameBuffer[i] = (frame[i] - mean) * w[i];
+        }
+        Arrays.fill(frameBuffer, frameLength, frameBuffer.length, 0);
+        autocorrelate();
+
+        double period = 0, voicing = 0;
+        if (re[0] > 0 && energyDb > SILENCE_DB) {
+            int best = -1;
+            double bestValue = 0, bestScore = Double.NEGATIVE_INFINITY;
+            for (int lag = minLag; lag <= maxLag; lag++) {
+                double value = normalized(lag);
+                if (value > 0 && value >= normalized(lag - 1) && value >= normalized(lag + 1)) {
+                    double score = value - OCTAVE_COST * Math.log((double) lag / minLag) / Math.log(2);
+                    if (score > bestScore) {
+                        best = lag;
+                        bestValue = value;
+                        bestScore = score;
+                    }
+                }
+            }
+            if (best > 0 && bestValue > VOICING_THRESHOLD) {
+                double left = normalized(best - 1);
+                double right = normalized(best + 1);
+                double curvature = left - 2 * bestValue + right;
+                double shift = curvature < 0 ? 0.5 * (left - right) / curvature : 0;
+                period = best + shift;
+                voicing = Math.min(1, bestValue);
+            }
+        }
+
+        out[F0] = period > 0 ? sampleRate / period : 0;
+        out[VOICING] = voicing;
+        out[ENERGY] = energyDb;
+        if (period > 0 && previousPeriod > 0) {
+            out[JITTER] = Math.abs(period - previousPeriod) / (0.5 * (period + previousPeriod));
+            out[SHIMMER] = Math.abs(amplitude - previousAmplitude) / (0.5 * (amplitude + previousAmplitude));
+        } else {
+            out[JITTER] = 0;
+            out[SHIMMER] = 0;
+        }
+        previousPeriod = period;
+        previousAmplitude = period > 0 ? amplitude : 0;
+    }
+
+    /**
+     * Replaces the zero-padded signal in {@link #frameBuffer} by its power spectrum, and
+     * writes the autocorrelation of the signal, scaled by the FFT size, into {@link #re}.
+     */
+    private void autocorrelate() {
+        int n = frameBuffer.length;
+        int h = n / 2;
+        fft.realFft(frameBuffer, re, im);
+        // the power spectrum is real and even, so its transform is the autocorrelation
+        for (int k = 0; k <= h; k++) {
+            frameBuffer[k] = re[k] * re[k] + im[k] * im[k];
+        }
+        for (int k = 1; k < h; k++) {
+            frameBuffer[n - k] = frameBuffer[k];
+        }
+        fft.realFft(frameBuffer, re, im);
+    }
+
+    /**
+     * Returns the autocorrelation at the given lag, normalized by the energy of the frame
+     * and by the autocorrelation of the window.
+     */
+    private double normalized(int lag) {
+        return re[lag] / re[0] / windowAutocorrelation[lag];
+    }
+
+    /**
+     * Computes the features of a frame and notifies listeners.
+     */
+    @Override
+    protected void processFrame(short[] frame, long frameStart) {
+        computeFeatures(frame, features);
+        ProsodyListener[] current = listeners.get();
+        for (int i = 0; i < current.length; i++) {
+            current[i].onProsodyFrame(features, frameStart);
+        }
+    }
+
+    public interface ProsodyListener {
+        /**
+         * Called for every completed frame.
+         * @param features the prosodic features of the frame, indexed by {@link #F0},
+         *                 {@link #VOICING}, {@link #JITTER}, {@link #SHIMMER} and {@link #ENERGY};
+         *                 reused between calls
+         * @param sampleIndex the index within the stream of the first sample of the frame
+         */
+        void onProsodyFrame(double[] features, long sampleIndex);
+    }
+}
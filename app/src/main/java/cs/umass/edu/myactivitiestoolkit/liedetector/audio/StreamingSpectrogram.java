@@ -0,0 +1,150 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.FFT;
+
+/**
+ * Computes a scrolling spectrogram of a continuous audio stream with a short-time Fourier
+ * transform. Each hop worth of new samples produces one column of log power, in dB, which
+ * overwrites the oldest column of a fixed-size ring, so memory is bounded no matter how
+ * long the recording runs and no work is repeated for columns already computed.
+ * <br><br>
+ * The ring is written by the thread that delivers the audio and may be read concurrently,
+ * e.g. by the UI thread, through {@link #copyColumns(float[], long)}. A reader keeps its own
+ * copy of the ring and only copies the columns added since its last update, so the cost of
+ * an update is proportional to the number of new columns, not to the size of the image.
+ * <br><br>
+ * Column c is stored in slot {@code c % getCapacity()}, bins of a column are contiguous:
+ * <pre>
+ * {@code value = ring[(int) (c % capacity) * numBins + bin]}
+ * </pre>
+ *
+ * @see MicrophoneRecorder.MicrophoneListener
+ */
+public class StreamingSpectrogram extends FrameStream {
+
+    /** The log power assigned to empty bins, in dB, to avoid log(0). **/
+    public static final float MIN_POWER_DB = -30;
+
+    /** The number of frequency bins in each column, from DC to the Nyquist frequency. **/
+    private final int numBins;
+
+    /** The number of columns kept in the ring. **/
+    private final int capacity;
+
+    private final FFT fft;
+
+    private final HammingWindow window;
+
+    /** FFT input and output buffers. **/
+    private final double[] frameBuffer, re, im;
+
+    /** The most recent columns, {@link #capacity} columns of {@link #numBins} values. **/
+    private final float[] columns;
+
+    /** The number of columns computed; published after each column is complete. **/
+    private volatile long columnsWritten = 0;
+
+    /**
+     * Instantiates a streaming spectrogram.
+     * @param frameLength the number of samples in each frame
+     * @param hopLength the number of samples between the starts of consecutive frames
+     * @param capacity the number of columns kept, i.e. the width of the spectrogram
+     */
+    public StreamingSpectrogram(int frameLength, int hopLength, int capacity) {
+        super(frameLength, hopLength);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.capacity = capacity;
+        int fftSize = MFCCPlan.nextPowerOfTwo(frameLength);
+        numBins = fftSize / 2 + 1;
+        fft = new FFT(fftSize);
+        window = new HammingWindow(frameLength);
+        frameBuffer = new double[fftSize];
+        re = new double[numBins];
+        im = new double[numBins];
+        columns = new float[capacity * numBins];
+    }
+
+    /**
+     * Returns the number of frequency bins in each column.
+     * @return fftSize / 2 + 1
+     */
+    public int getNumBins() {
+        return numBins;
+    }
+
+    /**
+     * Returns the number of columns kept in the ring.
+     * @return the width of the spectrogram
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of columns computed since the spectrogram was created or reset.
+     * Only the last {@link #getCapacity()} of these are still available.
+     * @return the index of the next column
+     */
+    public long getColumnCount() {
+        return columnsWritten;
+    }
+
+    /**
+     * Discards any buffered samples, e.g. when recording is restarted. Readers should also
+     * discard their copy of the ring.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        columnsWritten = 0;
+    }
+
+    /**
+     * Computes the log power spectrum of a frame into the next slot of the ring.
+     */
+    @Override
+    protected void processFrame(short[] frame, long frameStart) {
+        window.applyWindow(frame, 0, frameLength, frameBuffer);
+        fft.realFft(frameBuffer, re, im);
+
+        long column = columnsWritten;
+        int base = (int) (column % capacity) * numBins;
+        for (int k = 0; k < numBins; k++) {
+            double power = re[k] * re[k] + im[k] * im[k];
+            columns[base + k] = power > 0 ? Math.max(MIN_POWER_DB, (float) (10 * Math.log10(power))) : MIN_POWER_DB;
+        }
+        columnsWritten = column + 1;
+    }
+
+    /**
+     * Brings a reader's copy of the ring up to date, copying only the columns added since
+     * the previous call. Columns are copied to the same slots they occupy in the ring.
+     * <br><br>
+     * If the reader has fallen more than {@link #getCapacity()} columns behind, the columns
+     * it missed are lost and only the most recent ones are copied. A slot which the writer
+     * overwrote during the copy may be torn until the next call, which copies it again.
+     * @param dest the reader's copy, at least {@link #getCapacity()} * {@link #getNumBins()} long
+     * @param columnsSeen the value returned by the previous call, or 0 initially
+     * @return the number of columns now in dest, to be passed to the next call
+     */
+    public long copyColumns(float[] dest, long columnsSeen) {
+        long written = columnsWritten;
+        if (columnsSeen > written) {
+            // the spectrogram was reset
+            columnsSeen = 0;
+        }
+        long first = Math.max(columnsSeen, written - capacity);
+        for (long c = first; c < written; ) {
+            // copy runs of contiguous slots, wrapping at the end of the ring
+            int slot = (int) (c % capacity);
+            int n = (int) Math.min(written - c, capacity - slot);
+            System.arraycopy(columns, slot * numBins, dest, slot * numBins, n * numBins);
+            c += n;
+        }
+        // a slot overwritten during the copy now belongs to a column after written, so it
+        // is copied again by the next call
+        return written;
+    }
+}
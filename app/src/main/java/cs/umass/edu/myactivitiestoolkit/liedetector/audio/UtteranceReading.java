@@ -0,0 +1,106 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import edu.umass.cs.MHLClient.sensors.SensorReading;
+
+/**
+ * Wraps the summary of an utterance computed on the phone into a sensor reading to send
+ * to the server: its extent in the stream, and the frame count, mean, variance, minimum
+ * and maximum of each MFCC and prosody feature over its frames. One reading describes a
+ * whole answer, in place of the audio or the feature frames it spans.
+ *
+ * @see SensorReading
+ * @see UtteranceStream
+ */
+public class UtteranceReading extends SensorReading {
+
+    /** The indices within the stream of the first sample and of the sample after the last. **/
+    private final long start, end;
+
+    /** The sampling rate of the stream, in Hz. **/
+    private final int sampleRate;
+
+    /** The frame counts of the MFCC and prosody statistics. **/
+    private final long mfccCount, prosodyCount;
+
+    /** The mean, variance, minimum and maximum of each feature, one statistic after another. **/
+    private final double[] mfcc, prosody;
+
+    /**
+     * Instantiates an utterance reading.
+     *
+     * @param userID a 10-byte hex string identifying the current user.
+     * @param deviceType describes the device.
+     * @param deviceID unique device identifier.
+     * @param t the timestamp at which the event occurred, in Unix time by convention.
+     * @param utterance the utterance; its statistics are copied, so it may be reused
+     * @param sampleRate the sampling rate of the stream, in Hz
+     */
+    public UtteranceReading(String userID, String deviceType, String deviceID, long t,
+                            UtteranceStream.Utterance utterance, int sampleRate) {
+        super(userID, deviceType, deviceID, "SENSOR_AUDIO_UTTERANCE", t);
+        this.start = utterance.getStart();
+        this.end = utterance.getEnd();
+        this.sampleRate = sampleRate;
+        mfccCount = utterance.getMFCCStatistics().getCount();
+        prosodyCount = utterance.getProsodyStatistics().getCount();
+        mfcc = flatten(utterance.getMFCCStatistics());
+        prosody = flatten(utterance.getProsodyStatistics());
+    }
+
+    /**
+     * Copies the statistics of each feature: the means, then the variances, the minima and
+     * the maxima.
+     */
+    private static double[] flatten(FeatureStatistics statistics) {
+        int n = statistics.getNumFeatures();
+        double[] values = new double[4 * n];
+        if (statistics.getCount() == 0) {
+            return values;
+        }
+        for (int i = 0; i < n; i++) {
+            values[i] = statistics.getMean(i);
+            values[n + i] = statistics.getVariance(i);
+            values[2 * n + i] = statistics.getMin(i);
+            values[3 * n + i] = statistics.getMax(i);
+        }
+        return values;
+    }
+
+    private static JSONObject toJSON(long count, double[] values) throws JSONException {
+        int n = values.length / 4;
+        JSONObject obj = new JSONObject();
+        obj.put("count", count);
+        String[] names = {"mean", "variance", "min", "max"};
+        for (int s = 0; s < names.length; s++) {
+            JSONArray array = new JSONArray();
+            for (int i = 0; i < n; i++) {
+                array.put(values[s * n + i]);
+            }
+            obj.put(names[s], array);
+        }
+        return obj;
+    }
+
+    @Override
+    protected JSONObject toJSONObject() {
+        JSONObject obj = getBaseJSONObject();
+        JSONObject data = new JSONObject();
+        try {
+            data.put("t", timestamp);
+            data.put("start", start);
+            data.put("end", end);
+            data.put("sample_rate", sampleRate);
+            data.put("mfcc", toJSON(mfccCount, mfcc));
+            data.put("prosody", toJSON(prosodyCount, prosody));
+            obj.put("data", data);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return obj;
+    }
+}
@@ -0,0 +1,261 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+/**
+ * Segments a continuous audio stream into utterances and summarizes the MFCC and prosody
+ * frames of each one, so that an answer can be scored from a single summary instead of
+ * the audio or the frames it spans.
+ * <br><br>
+ * The audio is split into short frames, each classified by a {@link VoiceActivityDetector}.
+ * An utterance starts at the first speech frame and ends at the first frame after it which
+ * is not speech, i.e. once speech has paused for longer than the hangover of the detector.
+ * Utterances shorter than a minimum length, e.g. coughs or clicks, are dropped.
+ * <br><br>
+ * The stream listens to an {@link MFCCStream} and a {@link ProsodyStream} fed with the same
+ * audio, and accumulates the {@link FeatureStatistics} of the frames which start inside
+ * the current utterance. Only voiced prosody frames are counted, and MFCC frames with
+ * non-finite features, e.g. those of digital silence, are skipped. The audio must be
+ * written to this stream before it is written to the feature streams, so that the
+ * boundaries of an utterance are known when its frames arrive.
+ * <br><br>
+ * A frame which starts just before the end of an utterance completes only once the feature
+ * stream has received the rest of it. An utterance is therefore passed to
+ * {@link UtteranceListener#onUtterance(Utterance)} once the stream has advanced another
+ * frame delay past its end, the length of the longest feature frame, or when
+ * {@link #finish()} is called.
+ * <br><br>
+ * The stream keeps state between buffers and must only be used by one thread at a time.
+ * Nothing is allocated per buffer or per frame.
+ *
+ * @see VoiceActivityDetector
+ * @see FeatureStatistics
+ */
+public class UtteranceStream extends FrameStream
+        implements MFCCStream.MFCCListener, ProsodyStream.ProsodyListener {
+
+    /** The shortest utterance reported, in samples. **/
+    private final int minUtteranceLength;
+
+    /** The number of samples after the end of an utterance before it is reported. **/
+    private final int frameDelay;
+
+    private final VoiceActivityDetector voiceActivityDetector;
+
+    /** The utterance in progress, if {@link #speaking}. **/
+    private Utterance current;
+
+    /** An utterance which has ended, but may still receive its last feature frames; its end is -1 if none. **/
+    private Utterance pending;
+
+    /** Whether an utterance is in progress. **/
+    private boolean speaking = false;
+
+    /** Registered listeners. **/
+    private final ListenerList<UtteranceListener> listeners = new ListenerList<UtteranceListener>(new UtteranceListener[0]);
+
+    /**
+     * Instantiates an utterance stream.
+     * @param frameLength the number of samples in each frame classified as speech or not
+     * @param hangoverFrames the number of frames of silence after which an utterance ends
+     * @param minUtteranceLength the shortest utterance reported, in samples
+     * @param frameDelay the length of the longest feature frame, in samples
+     * @param numMFCCFeatures the number of features in each MFCC frame
+     */
+    public UtteranceStream(int frameLength, int hangoverFrames, int minUtteranceLength, int frameDelay,
+                           int numMFCCFeatures) {
+        // frames do not overlap, so each sample is classified once
+        super(frameLength, frameLength);
+        this.minUtteranceLength = minUtteranceLength;
+        this.frameDelay = frameDelay;
+        voiceActivityDetector = new VoiceActivityDetector(hangoverFrames);
+        current = new Utterance(numMFCCFeatures);
+        // a second utterance takes the place of the pending one once it has been reported
+        pending = new Utterance(numMFCCFeatures);
+        pending.start = pending.end = -1;
+    }
+
+    public void registerListener(UtteranceListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unregisterListener(UtteranceListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Discards the utterance in progress and any buffered samples, e.g. when recording is
+     * restarted.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        voiceActivityDetector.reset();
+        speaking = false;
+        pending.start = pending.end = -1;
+    }
+
+    /**
+     * Appends samples to the stream, starting and ending utterances as speech starts and
+     * stops. Any utterance whose feature frames have all been received is reported first.
+     * @param buffer the audio samples
+     * @param offset the index of the first sample to append
+     * @param length the number of samples to append
+     */
+    @Override
+    public void write(short[] buffer, int offset, int length) {
+        if (pending.end >= 0 && getSamplesReceived() >= pending.end + frameDelay) {
+            emitPending();
+        }
+        super.write(buffer, offset, length);
+    }
+
+    /**
+     * Reports the utterance in progress, if it is long enough, and any utterance still
+     * awaiting frames, e.g. when recording stops.
+     */
+    public void finish() {
+        if (pending.end >= 0) {
+            emitPending();
+        }
+        if (speaking) {
+            endUtterance(getSamplesReceived());
+            if (pending.end >= 0) {
+                emitPending();
+            }
+        }
+    }
+
+    /**
+     * Starts or ends an utterance depending on whether the frame contains speech.
+     */
+    @Override
+    protected void processFrame(short[] frame, long frameStart) {
+        boolean speech = voiceActivityDetector.isSpeech(frame, 0, frameLength);
+        if (speech && !speaking) {
+            speaking = true;
+            current.start = frameStart;
+            current.end = -1;
+            current.mfcc.reset();
+            current.prosody.reset();
+        } else if (!speech && speaking) {
+            endUtterance(frameStart);
+        }
+    }
+
+    /**
+     * Ends the utterance in progress, which then awaits the rest of its frames.
+     * @param end the index within the stream of the first sample after the utterance
+     */
+    private void endUtterance(long end) {
+        speaking = false;
+        if (end - current.start < minUtteranceLength) return;
+        if (pending.end >= 0) {
+            // speech resumed within the frame delay; report the previous utterance early
+            emitPending();
+        }
+        current.end = end;
+        Utterance ended = current;
+        current = pending;
+        pending = ended;
+    }
+
+    /**
+     * Notifies listeners of the pending utterance and clears it.
+     */
+    private void emitPending() {
+        UtteranceListener[] registered = listeners.get();
+        for (int i = 0; i < registered.length; i++) {
+            registered[i].onUtterance(pending);
+        }
+        pending.start = pending.end = -1;
+    }
+
+    /**
+     * Returns the utterance a feature frame belongs to.
+     * @param sampleIndex the index within the stream of the first sample of the frame
+     * @return the utterance, or null if the frame starts outside of an utterance
+     */
+    private Utterance utteranceAt(long sampleIndex) {
+        if (speaking && sampleIndex >= current.start) {
+            return current;
+        }
+        if (pending.end >= 0 && sampleIndex >= pending.start && sampleIndex < pending.end) {
+            return pending;
+        }
+        return null;
+    }
+
+    @Override
+    public void onMFCCFrame(double[] features, long sampleIndex) {
+        Utterance utterance = utteranceAt(sampleIndex);
+        if (utterance == null) return;
+        for (int i = 0; i < utterance.mfcc.getNumFeatures(); i++) {
+            if (Double.isNaN(features[i]) || Double.isInfinite(features[i])) return;
+        }
+        utterance.mfcc.add(features);
+    }
+
+    @Override
+    public void onProsodyFrame(double[] features, long sampleIndex) {
+        if (features[ProsodyStream.F0] == 0) return;
+        Utterance utterance = utteranceAt(sampleIndex);
+        if (utterance == null) return;
+        utterance.prosody.add(features);
+    }
+
+    /**
+     * An utterance and the statistics of its feature frames.
+     */
+    public static class Utterance {
+
+        /** The indices within the stream of the first sample and of the sample after the last. **/
+        private long start, end;
+
+        /** The statistics of the MFCC and of the voiced prosody frames. **/
+        private final FeatureStatistics mfcc, prosody;
+
+        private Utterance(int numMFCCFeatures) {
+            mfcc = new FeatureStatistics(numMFCCFeatures);
+            prosody = new FeatureStatistics(ProsodyStream.NUM_FEATURES);
+        }
+
+        /**
+         * Returns the start of the utterance.
+         * @return the index within the stream of the first sample
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the end of the utterance.
+         * @return the index within the stream of the sample after the last
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Returns the statistics of the MFCC frames of the utterance.
+         * @return the statistics, one per MFCC feature
+         */
+        public FeatureStatistics getMFCCStatistics() {
+            return mfcc;
+        }
+
+        /**
+         * Returns the statistics of the voiced prosody frames of the utterance.
+         * @return the statistics, indexed as the {@link ProsodyStream} features
+         */
+        public FeatureStatistics getProsodyStatistics() {
+            return prosody;
+        }
+    }
+
+    public interface UtteranceListener {
+        /**
+         * Called once for every utterance, after its last feature frame.
+         * @param utterance the utterance; reused once this returns
+         */
+        void onUtterance(Utterance utterance);
+    }
+}
@@ -0,0 +1,162 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+/**
+ * A cheap frame-level voice activity detector, used to skip feature extraction and uploads
+ * during the silence between interview questions.
+ * <br><br>
+ * Each frame is classified from its short-term energy and zero-crossing rate relative to
+ * an adaptive noise floor. Voiced speech is well above the floor; unvoiced speech, e.g.
+ * fricatives, is quieter but crosses zero far more often than background noise. Energies
+ * are the mean squared sample in dB relative to a sample of amplitude 1, so a full-scale
+ * 16-bit frame is at about 90 dB.
+ * <br><br>
+ * The noise floor follows the energy of non-speech frames, dropping immediately to quieter
+ * frames and rising only slowly, so that a long utterance is not absorbed into the floor.
+ * Speech pauses between words, but a step rise in the background, e.g. a fan turning on,
+ * does not: once every frame of a block of {@link #MIN_STATISTICS_FRAMES} has been
+ * classified as speech, the floor rises to the quietest frame of the block, as in minimum
+ * statistics noise estimation. After speech ends, frames continue to be reported as speech
+ * for a short hangover so that the trailing edges of words are not cut.
+ * <br><br>
+ * A detector keeps state between frames and must only be used by one thread at a time.
+ */
+public class VoiceActivityDetector {
+
+    /** Frames this far above the noise floor, in dB, are speech. **/
+    private static final double SPEECH_THRESHOLD_DB = 9;
+
+    /** Frames this far above the noise floor, in dB, are speech if they also cross zero often. **/
+    private static final double UNVOICED_THRESHOLD_DB = 4;
+
+    /** The zero-crossing rate, per sample, above which a quiet frame may be unvoiced speech. **/
+    private static final double UNVOICED_ZCR = 0.25;
+
+    /** How quickly the noise floor rises towards the energy of non-speech frames. **/
+    private static final double NOISE_FLOOR_ADAPTATION = 0.05;
+
+    /**
+     * The number of consecutive speech frames after which the floor rises to their minimum
+     * energy, 1.5 s of 25 ms frames. Speech rarely runs this long without a quieter frame.
+     */
+    public static final int MIN_STATISTICS_FRAMES = 60;
+
+    /** The lowest frame energy, in dB relative to a sample of amplitude 1, to avoid log(0). **/
+    private static final double MIN_ENERGY_DB = -30;
+
+    /** The number of frames reported as speech after the last speech frame. **/
+    private final int hangoverFrames;
+
+    /** The current noise floor estimate, in dB. **/
+    private double noiseFloorDb = Double.NaN;
+
+    /** The number of consecutive frames classified as speech, and the lowest energy among them, in dB. **/
+    private int speechRun = 0;
+    private double speechRunMinDb = Double.POSITIVE_INFINITY;
+
+    /** The number of hangover frames remaining. **/
+    private int hangover = 0;
+
+    /** The number of frames classified as speech, including hangover frames. **/
+    private long framesProcessed = 0;
+
+    /** The number of frames classified as non-speech. **/
+    private long framesSkipped = 0;
+
+    /**
+     * Instantiates a voice activity detector.
+     * @param hangoverFrames the number of frames reported as speech after speech ends
+     */
+    public VoiceActivityDetector(int hangoverFrames) {
+        this.hangoverFrames = hangoverFrames;
+    }
+
+    /**
+     * Classifies the given frame and updates the noise floor.
+     * @param data16bit the data buffer
+     * @param offset the index into the data buffer indicating the start of the frame
+     * @param length the size of the frame
+     * @return true if the frame contains speech or falls within the hangover
+     */
+    public boolean isSpeech(short[] data16bit, int offset, int length) {
+        double energy = 0;
+        int crossings = 0;
+        short previous = data16bit[offset];
+        for (int i = offset; i < offset + length; i++) {
+            short sample = data16bit[i];
+            energy += (double) sample * sample;
+            if ((sample >= 0) != (previous >= 0)) crossings++;
+            previous = sample;
+        }
+        double energyDb = Math.max(MIN_ENERGY_DB, 10 * Math.log10(energy / length));
+        double zcr = (double) crossings / length;
+
+        if (Double.isNaN(noiseFloorDb)) {
+            noiseFloorDb = energyDb;
+        }
+        boolean speech = energyDb > noiseFloorDb + SPEECH_THRESHOLD_DB
+                || (energyDb > noiseFloorDb + UNVOICED_THRESHOLD_DB && zcr > UNVOICED_ZCR);
+
+        if (speech) {
+            hangover = hangoverFrames;
+            speechRunMinDb = Math.min(speechRunMinDb, energyDb);
+            if (++speechRun == MIN_STATISTICS_FRAMES) {
+                // no pause for too long: the background itself has risen
+                noiseFloorDb = Math.max(noiseFloorDb, speechRunMinDb);
+                speechRun = 0;
+                speechRunMinDb = Double.POSITIVE_INFINITY;
+            }
+        } else {
+            speechRun = 0;
+            speechRunMinDb = Double.POSITIVE_INFINITY;
+            if (energyDb < noiseFloorDb) {
+                noiseFloorDb = energyDb;
+            } else {
+                noiseFloorDb += NOISE_FLOOR_ADAPTATION * (energyDb - noiseFloorDb);
+            }
+        }
+
+        if (speech || hangover-- > 0) {
+            framesProcessed++;
+            return true;
+        }
+        hangover = 0;
+        framesSkipped++;
+        return false;
+    }
+
+    /**
+     * Returns the current noise floor estimate.
+     * @return the noise floor, in dB relative to a sample of amplitude 1
+     */
+    public double getNoiseFloor() {
+        return noiseFloorDb;
+    }
+
+    /**
+     * Returns the number of frames classified as speech, including hangover frames.
+     * @return the number of frames passed on for processing
+     */
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+
+    /**
+     * Returns the number of frames classified as non-speech.
+     * @return the number of frames skipped
+     */
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /**
+     * Forgets the noise floor and clears the counters.
+     */
+    public void reset() {
+        noiseFloorDb = Double.NaN;
+        speechRun = 0;
+        speechRunMinDb = Double.POSITIVE_INFINITY;
+        hangover = 0;
+        framesProcessed = 0;
+        framesSkipped = 0;
+    }
+}
@@ -0,0 +1,154 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.processing;
+
+/**
+ * Computes the energy of a frame in a fixed set of frequency bands. Band k covers the DFT
+ * bins of the frame whose frequencies lie in [low, high), and its energy is the sum of
+ * |X[bin]|^2 over those bins, with no window applied. The implementations can be swapped
+ * freely wherever band power is needed:
+ * <ul>
+ *     <li>{@link FFTBandPower} computes the whole spectrum, in O(N log N).</li>
+ *     <li>{@link GoertzelBank} evaluates only the bins inside the bands, in O(N * bins),
+ *     with the same result. It accepts any frame length, but is only cheaper than the FFT
+ *     when the bands span no more than about log2(N) / 2 bins in total.</li>
+ *     <li>{@link GoertzelBank} with a DFT length shorter than the frame averages the power
+ *     of the segments of the frame, i.e. Bartlett's method. Bins are coarser, so each band
+ *     spans only a bin or two and a frame costs O(N * bands). The energy is scaled to the
+ *     units of a full-length DFT, so it estimates the same value.</li>
+ * </ul>
+ * {@link #create(double, int, double[][])} picks the cheaper of the two exact methods.
+ * An instance keeps the power of each bin of the last frame, for
+ * {@link #getPeakFrequency(int)}, and must only be used by one thread at a time.
+ */
+public abstract class BandPower {
+
+    /** The band of the pulse in a PPG signal, 42 to 210 beats per minute, in Hz. */
+    public static final double[][] HEART_RATE_BAND = {{0.7, 3.5}};
+
+    /** The sample rate of the frames, in Hz. **/
+    protected final double sampleRate;
+
+    /** The number of samples in each frame. **/
+    protected final int frameLength;
+
+    /** The length of the DFT whose bins make up the bands, a divisor of the frame length. **/
+    protected final int dftLength;
+
+    /** The first and last bin of each band, inclusive. **/
+    protected final int[] firstBin, lastBin;
+
+    /** The power of each bin of the last frame; only bins inside a band are set. **/
+    protected final double[] binPower;
+
+    /** Holds a frame of 16-bit samples converted for {@link #compute(double[], int, double[])}. **/
+    private double[] frameBuffer;
+
+    /**
+     * Assigns the DFT bins to the bands.
+     * @param sampleRate the sample rate of the frames, in Hz
+     * @param frameLength the number of samples in each frame
+     * @param dftLength the length of the DFT whose bins make up the bands, a divisor of
+     *                  frameLength
+     * @param bands the lower and upper edge of each band, in Hz
+     * @throws IllegalArgumentException if a band contains no bin, i.e. it is narrower than
+     *                                  sampleRate / dftLength or above the Nyquist frequency
+     */
+    protected BandPower(double sampleRate, int frameLength, int dftLength, double[][] bands) {
+        if (dftLength < 2 || frameLength % dftLength != 0) {
+            throw new IllegalArgumentException("DFT length must be at least 2 and divide the frame length.");
+        }
+        this.sampleRate = sampleRate;
+        this.frameLength = frameLength;
+        this.dftLength = dftLength;
+        firstBin = new int[bands.length];
+        lastBin = new int[bands.length];
+        for (int b = 0; b < bands.length; b++) {
+            firstBin[b] = Math.max(0, (int) Math.ceil(bands[b][0] * dftLength / sampleRate));
+            lastBin[b] = Math.min(dftLength / 2, (int) Math.ceil(bands[b][1] * dftLength / sampleRate) - 1);
+            if (firstBin[b] > lastBin[b]) {
+                throw new IllegalArgumentException("Band " + bands[b][0] + "-" + bands[b][1]
+                        + " Hz contains no bin of a " + dftLength + "-point DFT.");
+            }
+        }
+        binPower = new double[dftLength / 2 + 1];
+    }
+
+    /**
+     * Instantiates the cheaper stage which computes the exact band energies of the frame:
+     * a {@link GoertzelBank} if the bands span at most log2(frameLength) / 2 bins or the frame
+     * length is not a power of two, an {@link FFTBandPower} otherwise.
+     * @param sampleRate the sample rate of the frames, in Hz
+     * @param frameLength the number of samples in each frame
+     * @param bands the lower and upper edge of each band, in Hz
+     * @return a band power stage
+     */
+    public static BandPower create(double sampleRate, int frameLength, double[][] bands) {
+        GoertzelBank goertzel = new GoertzelBank(sampleRate, frameLength, bands);
+        int log2 = 31 - Integer.numberOfLeadingZeros(frameLength);
+        if (frameLength != 1 << log2 || 2 * goertzel.getNumFilters() <= log2) {
+            return goertzel;
+        }
+        return new FFTBandPower(sampleRate, frameLength, bands);
+    }
+
+    /**
+     * Returns the number of bands.
+     * @return the length of the energies computed for each frame
+     */
+    public int getNumBands() {
+        return firstBin.length;
+    }
+
+    /**
+     * Returns the number of samples in each frame.
+     * @return the frame length
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * Returns the spacing of the bins, i.e. the frequency resolution of the bands.
+     * @return sampleRate / dftLength, in Hz
+     */
+    public double getBinWidth() {
+        return sampleRate / dftLength;
+    }
+
+    /**
+     * Computes the energy of a frame in each band.
+     * @param frame the samples
+     * @param offset the index in frame of the first sample
+     * @param energies receives the energy of each band, at least {@link #getNumBands()} long
+     */
+    public abstract void compute(double[] frame, int offset, double[] energies);
+
+    /**
+     * Computes the energy of a frame of 16-bit audio in each band.
+     * @param frame the samples
+     * @param offset the index in frame of the first sample
+     * @param energies receives the energy of each band, at least {@link #getNumBands()} long
+     */
+    public void compute(short[] frame, int offset, double[] energies) {
+        if (frameBuffer == null) {
+            frameBuffer = new double[frameLength];
+        }
+        for (int i = 0; i < frameLength; i++) {
+            frameBuffer[i] = frame[offset + i];
+        }
+        compute(frameBuffer, 0, energies);
+    }
+
+    /**
+     * Returns the frequency of the strongest bin of a band in the last frame, e.g. the
+     * pulse rate in {@link #HEART_RATE_BAND}.
+     * @param band the index of the band
+     * @return the frequency of the bin, in Hz
+     */
+    public double getPeakFrequency(int band) {
+        int peak = firstBin[band];
+        for (int k = firstBin[band] + 1; k <= lastBin[band]; k++) {
+            if (binPower[k] > binPower[peak]) peak = k;
+        }
+        return peak * sampleRate / dftLength;
+    }
+}
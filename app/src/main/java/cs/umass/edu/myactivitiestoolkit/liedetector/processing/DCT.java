@@ -0,0 +1,160 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.processing;
+
+/**
+ * A fast orthonormal DCT-II of any length, with the same scaling as the DCT matrix of
+ * {@link cs.umass.edu.myactivitiestoolkit.liedetector.audio.MFCC}:
+ * <pre>
+ *     X[k] = s(k) sqrt(2 / N) sum_{n=0..N-1} x[n] cos(pi (2n + 1) k / (2N)),
+ *     s(0) = 1 / sqrt(2), s(k) = 1 otherwise
+ * </pre>
+ * The transform uses Lee's recursive decomposition. A DCT of even length N splits into
+ * two DCTs of length N / 2, one of the sums x[n] + x[N-1-n], which gives the even outputs,
+ * and one of the scaled differences, which gives the odd outputs. Splitting continues down to an
+ * odd or short length, which is transformed directly. A power-of-two length takes
+ * O(N log N) operations. Any other length, e.g. the 20 or 26 mel bands of MFCC
+ * configurations, costs O(N log N + N * m), where m is the largest odd factor of N.
+ * <br><br>
+ * Only the first few outputs are often needed, e.g. 12 cepstral coefficients of 40 bands.
+ * A truncated transform computes only the outputs each half needs, so it is cheaper still.
+ * <br><br>
+ * All scratch space is allocated up front, so a transform allocates nothing. An instance
+ * must only be used by one thread at a time.
+ */
+public class DCT {
+
+    /** Lengths up to this are transformed directly; splitting them saves less than it costs. **/
+    private static final int MAX_DIRECT_LENGTH = 8;
+
+    /** The length of the transform. **/
+    private final int n;
+
+    /** The number of times the length is halved before the direct transform. **/
+    private final int levels;
+
+    /** The length transformed directly, odd or at most {@link #MAX_DIRECT_LENGTH}. **/
+    private final int baseLength;
+
+    /** 1 / (2 cos(pi (2i + 1) / (2 n_l))) for the length n_l of each level. **/
+    private final double[][] factors;
+
+    /** cos(pi (2i + 1) k / (2 m)) for the base length m, row k. **/
+    private final double[] baseTable;
+
+    /** Per level: the sums, the differences, and the transforms of each. **/
+    private final double[][] sums, differences, sumOutputs, differenceOutputs;
+
+    /** The orthonormal scale factor sqrt(2 / N). **/
+    private final double scale;
+
+    /**
+     * Instantiates a DCT of the given length.
+     * @param n the number of inputs
+     */
+    public DCT(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("DCT length must be positive.");
+        }
+        this.n = n;
+        int l = 0;
+        int m = n;
+        while (m % 2 == 0 && m > MAX_DIRECT_LENGTH) {
+            m /= 2;
+            l++;
+        }
+        levels = l;
+        baseLength = m;
+        factors = new double[levels][];
+        sums = new double[levels][];
+        differences = new double[levels][];
+        sumOutputs = new double[levels][];
+        differenceOutputs = new double[levels][];
+        int length = n;
+        for (int level = 0; level < levels; level++) {
+            int half = length / 2;
+            factors[level] = new double[half];
+            for (int i = 0; i < half; i++) {
+                factors[level][i] = 0.5 / Math.cos(Math.PI * (2 * i + 1) / (2.0 * length));
+            }
+            sums[level] = new double[half];
+            differences[level] = new double[half];
+            sumOutputs[level] = new double[half];
+            // one extra output, which is always 0, for the last odd output
+            differenceOutputs[level] = new double[half + 1];
+            length = half;
+        }
+        baseTable = new double[baseLength * baseLength];
+        for (int k = 0; k < baseLength; k++) {
+            for (int i = 0; i < baseLength; i++) {
+                baseTable[k * baseLength + i] = Math.cos(Math.PI * (2 * i + 1) * k / (2.0 * baseLength));
+            }
+        }
+        scale = Math.sqrt(2.0 / n);
+    }
+
+    /**
+     * Returns the length of the transform.
+     * @return the number of inputs
+     */
+    public int getSize() {
+        return n;
+    }
+
+    /**
+     * Computes the first outputs of the orthonormal DCT-II.
+     * @param x the inputs; not modified
+     * @param offset the index in x of the first input
+     * @param out receives the outputs, at least numOutputs long
+     * @param numOutputs the number of outputs to compute, at most {@link #getSize()}
+     */
+    public void transform(double[] x, int offset, double[] out, int numOutputs) {
+        if (numOutputs < 0 || numOutputs > n) {
+            throw new IllegalArgumentException("Number of outputs must be in [0, " + n + "].");
+        }
+        if (numOutputs == 0) return;
+        transform(x, offset, n, out, 0, numOutputs, 0);
+        double s0 = scale / Math.sqrt(2.0);
+        out[0] *= s0;
+        for (int k = 1; k < numOutputs; k++) {
+            out[k] *= scale;
+        }
+    }
+
+    /**
+     * Computes the unnormalized DCT-II of length len, outputs 0 to count - 1.
+     */
+    private void transform(double[] x, int offset, int len, double[] out, int outOffset, int count, int level) {
+        if (level == levels) {
+            for (int k = 0; k < count; k++) {
+                int row = k * baseLength;
+                double s = 0;
+                for (int i = 0; i < baseLength; i++) {
+                    s += baseTable[row + i] * x[offset + i];
+                }
+                out[outOffset + k] = s;
+            }
+            return;
+        }
+        int half = len / 2;
+        double[] u = sums[level], v = differences[level], f = factors[level];
+        for (int i = 0; i < half; i++) {
+            double a = x[offset + i];
+            double b = x[offset + len - 1 - i];
+            u[i] = a + b;
+            v[i] = (a - b) * f[i];
+        }
+        // outputs 2k come from the sums, outputs 2k + 1 from consecutive pairs of the differences
+        int evenCount = (count + 1) / 2;
+        int oddCount = count / 2;
+        double[] uOut = sumOutputs[level], vOut = differenceOutputs[level];
+        transform(u, 0, half, uOut, 0, evenCount, level + 1);
+        int vCount = Math.min(oddCount + 1, half);
+        transform(v, 0, half, vOut, 0, vCount, level + 1);
+        vOut[half] = 0;
+        for (int k = 0; k < evenCount; k++) {
+            out[outOffset + 2 * k] = uOut[k];
+        }
+        for (int k = 0; k < oddCount; k++) {
+            out[outOffset + 2 * k + 1] = vOut[k] + vOut[k + 1];
+        }
+    }
+}
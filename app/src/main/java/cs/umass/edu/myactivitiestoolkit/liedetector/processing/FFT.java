@@ -8,6 +8,10 @@ public class FFT
         double[] cos;
         double[] sin;
 
+        // Single-precision copies of the tables, for the float transforms
+        float[] cosf;
+        float[] sinf;
+
         public FFT(int n)
         {
                 this.n = n;
@@ -28,10 +32,26 @@ public class FFT
                         cos[i] = Math.cos(-2*Math.PI*i/n);
                         sin[i] = Math.sin(-2*Math.PI*i/n);
                 }
+                cosf = new float[n/2];
+                sinf = new float[n/2];
+                for(int i=0; i<n/2; i++)
+                {
+                        cosf[i] = (float)cos[i];
+                        sinf[i] = (float)sin[i];
+                }
         }
 
 
 
+        /**
+         * Returns the length of the transform.
+         * @return the number of points, a power of 2
+         */
+        public int getSize()
+        {
+                return n;
+        }
+
         /***************************************************************
          * fft.c
          * Douglas L. Jones 
@@ -52,14 +72,76 @@ public class FFT
          *   as long as this header is included. 
          ****************************************************************/
         public void fft(double[] re, double[] im)
+        {
+                transform(re, im, n, m, 1);
+        }
+
+        /**
+         * Computes the FFT of a real-valued signal. The n real samples are packed into an
+         * n/2-point complex transform, which is then split into the spectrum of the
+         * original signal. Since the spectrum of a real signal is conjugate-symmetric, only
+         * the n/2 + 1 non-redundant bins are returned. This takes roughly half the time and
+         * memory of calling {@link #fft(double[], double[])} with an all-zero imaginary part.
+         *
+         * @param x the n real samples; not modified
+         * @param re receives the real part of bins 0..n/2; at least n/2 + 1 long
+         * @param im receives the imaginary part of bins 0..n/2; at least n/2 + 1 long
+         */
+        public void realFft(double[] x, double[] re, double[] im)
+        {
+                if (n < 2)
+                {
+                        throw new RuntimeException("Real FFT length must be at least 2");
+                }
+                int h = n/2;
+
+                // Pack even samples into the real part and odd samples into the imaginary part
+                for (int k = 0; k < h; k++)
+                {
+                        re[k] = x[2*k];
+                        im[k] = x[2*k+1];
+                }
+
+                // Half-size complex FFT; its twiddles are every other entry of the tables
+                transform(re, im, h, m - 1, 2);
+
+                // Split: X[k] = E[k] + W^k O[k], X[h-k] = conj(E[k] - W^k O[k])
+                double r0 = re[0];
+                re[0] = r0 + im[0];
+                re[h] = r0 - im[0];
+                im[0] = 0;
+                im[h] = 0;
+                for (int k = 1; k <= h/2; k++)
+                {
+                        int j = h - k;
+                        double er = 0.5*(re[k] + re[j]);
+                        double ei = 0.5*(im[k] - im[j]);
+                        double or = 0.5*(im[k] + im[j]);
+                        double oi = 0.5*(re[j] - re[k]);
+                        double tr = cos[k]*or - sin[k]*oi;
+                        double ti = cos[k]*oi + sin[k]*or;
+                        re[k] = er + tr;
+                        im[k] = ei + ti;
+                        re[j] = er - tr;
+                        im[j] = ti - ei;
+                }
+        }
+
+        /**
+         * In-place radix-2 DIT transform of the first size entries of re/im.
+         * @param size the transform length, a power of 2 no larger than n
+         * @param logSize log2(size)
+         * @param stride the step through the twiddle tables, n/size
+         */
+        private void transform(double[] re, double[] im, int size, int logSize, int stride)
         {
                 int i,j,k,n1,n2,a;
                 double c,s,t1,t2;
 
                 // Bit-reverse
                 j = 0;
-                n2 = n/2;
-                for (i=1; i < n - 1; i++)
+                n2 = size/2;
+                for (i=1; i < size - 1; i++)
                 {
                         n1 = n2;
                         while ( j >= n1 )
@@ -83,7 +165,7 @@ public class FFT
                 // FFT
                 n2 = 1;
 
-                for (i=0; i < m; i++)
+                for (i=0; i < logSize; i++)
                 {
                         n1 = n2;
                         n2 = n2 + n2;
@@ -93,9 +175,9 @@ public class FFT
                         {
                                 c = cos[a];
                                 s = sin[a];
-                                a +=  1 << (m-i-1);
+                                a +=  (1 << (logSize-i-1))*stride;
 
-                                for (k=j; k < n; k=k+n2)
+                                for (k=j; k < size; k=k+n2)
                                 {
                                         t1 = c*re[k+n1] - s*im[k+n1];
                                         t2 = s*re[k+n1] + c*im[k+n1];
@@ -108,4 +190,118 @@ public class FFT
                 }
         }                          
 
+
+        /**
+         * Single-precision version of {@link #fft(double[], double[])}, which halves the
+         * memory traffic of large transforms at the cost of about 7 significant digits.
+         */
+        public void fft(float[] re, float[] im)
+        {
+                transform(re, im, n, m, 1);
+        }
+
+        /**
+         * Single-precision version of {@link #realFft(double[], double[], double[])}.
+         *
+         * @param x the n real samples; not modified
+         * @param re receives the real part of bins 0..n/2; at least n/2 + 1 long
+         * @param im receives the imaginary part of bins 0..n/2; at least n/2 + 1 long
+         */
+        public void realFft(float[] x, float[] re, float[] im)
+        {
+                if (n < 2)
+                {
+                        throw new RuntimeException("Real FFT length must be at least 2");
+                }
+                int h = n/2;
+
+                for (int k = 0; k < h; k++)
+                {
+                        re[k] = x[2*k];
+                        im[k] = x[2*k+1];
+                }
+
+                transform(re, im, h, m - 1, 2);
+
+                float r0 = re[0];
+                re[0] = r0 + im[0];
+                re[h] = r0 - im[0];
+                im[0] = 0;
+                im[h] = 0;
+                for (int k = 1; k <= h/2; k++)
+                {
+                        int j = h - k;
+                        float er = 0.5f*(re[k] + re[j]);
+                        float ei = 0.5f*(im[k] - im[j]);
+                        float or = 0.5f*(im[k] + im[j]);
+                        float oi = 0.5f*(re[j] - re[k]);
+                        float tr = cosf[k]*or - sinf[k]*oi;
+                        float ti = cosf[k]*oi + sinf[k]*or;
+                        re[k] = er + tr;
+                        im[k] = ei + ti;
+                        re[j] = er - tr;
+                        im[j] = ti - ei;
+                }
+        }
+
+        /**
+         * Single-precision version of the in-place transform above.
+         */
+        private void transform(float[] re, float[] im, int size, int logSize, int stride)
+        {
+                int i,j,k,n1,n2,a;
+                float c,s,t1,t2;
+
+                // Bit-reverse
+                j = 0;
+                n2 = size/2;
+                for (i=1; i < size - 1; i++)
+                {
+                        n1 = n2;
+                        while ( j >= n1 )
+                        {
+                                j = j - n1;
+                                n1 = n1/2;
+                        }
+                        j = j + n1;
+
+                        if (i < j)
+                        {
+                                t1 = re[i];
+                                re[i] = re[j];
+                                re[j] = t1;
+                                t1 = im[i];
+                                im[i] = im[j];
+                                im[j] = t1;
+                        }
+                }
+
+                // FFT
+                n2 = 1;
+
+                for (i=0; i < logSize; i++)
+                {
+                        n1 = n2;
+                        n2 = n2 + n2;
+                        a = 0;
+
+                        for (j=0; j < n1; j++)
+                        {
+                                c = cosf[a];
+                                s = sinf[a];
+                                a +=  (1 << (logSize-i-1))*stride;
+
+                                for (k=j; k < size; k=k+n2)
+                                {
+                                        t1 = c*re[k+n1] - s*im[k+n1];
+                                        t2 = s*re[k+n1] + c*im[k+n1];
+                                        re[k+n1] = re[k] - t1;
+                                        im[k+n1] = im[k] - t2;
+                                        re[k] = re[k] + t1;
+                                        im[k] = im[k] + t2;
+                                }
+                        }
+                }
+        }
+
 }
\ No newline at end of file
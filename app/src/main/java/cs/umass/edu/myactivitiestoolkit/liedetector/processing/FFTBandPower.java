@@ -0,0 +1,50 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.processing;
+
+/**
+ * Computes band energies from the full spectrum of each frame, by summing the power of
+ * the bins of a real FFT. The frame length must be a power of two.
+ *
+ * @see GoertzelBank
+ */
+public class FFTBandPower extends BandPower {
+
+    private final FFT fft;
+
+    /** FFT output buffers. **/
+    private final double[] re, im;
+
+    /** Holds a frame which does not start at the beginning of its array. **/
+    private final double[] frameBuffer;
+
+    /**
+     * Instantiates a band power stage.
+     * @param sampleRate the sample rate of the frames, in Hz
+     * @param frameLength the number of samples in each frame, a power of two
+     * @param bands the lower and upper edge of each band, in Hz
+     */
+    public FFTBandPower(double sampleRate, int frameLength, double[][] bands) {
+        super(sampleRate, frameLength, frameLength, bands);
+        fft = new FFT(frameLength);
+        re = new double[frameLength / 2 + 1];
+        im = new double[frameLength / 2 + 1];
+        frameBuffer = new double[frameLength];
+    }
+
+    @Override
+    public void compute(double[] frame, int offset, double[] energies) {
+        if (offset == 0) {
+            fft.realFft(frame, re, im);
+        } else {
+            System.arraycopy(frame, offset, frameBuffer, 0, frameLength);
+            fft.realFft(frameBuffer, re, im);
+        }
+        for (int b = 0; b < firstBin.length; b++) {
+            double sum = 0;
+            for (int k = firstBin[b]; k <= lastBin[b]; k++) {
+                binPower[k] = re[k] * re[k] + im[k] * im[k];
+                sum += binPower[k];
+            }
+            energies[b] = sum;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.processing;
+
+/**
+ * Computes band energies with a bank of Goertzel filters, one per DFT bin inside a band.
+ * A Goertzel filter evaluates a single bin of the DFT with one multiply and two adds per
+ * sample, so a frame costs O(N * bins) instead of the O(N log N) of a full FFT, and the
+ * frame length need not be a power of two.
+ * <br><br>
+ * With a full-length DFT the bins are as fine as those of an FFT of the frame, so wide
+ * bands span many bins and the FFT is faster. Given a shorter DFT length, the bank runs
+ * over each segment of that length and sums the segment powers, scaled to the units of a
+ * full-length DFT: the bands are resolved more coarsely, but need only a filter or two
+ * each.
+ * <br><br>
+ * The recurrence of each filter is a chain of dependent operations, so filters are run
+ * four at a time over the frame to keep several chains in flight.
+ *
+ * @see FFTBandPower
+ */
+public class GoertzelBank extends BandPower {
+
+    /** The bins evaluated, those inside at least one band, in increasing order. **/
+    private final int[] bins;
+
+    /** The filter coefficient 2 cos(2 pi k / N) of each evaluated bin. **/
+    private final double[] coefficients;
+
+    /** The factor frameLength / dftLength, which scales the summed segment powers. **/
+    private final double scale;
+
+    /**
+     * Instantiates a filter bank which computes exactly the band energies of an FFT of the frame.
+     * @param sampleRate the sample rate of the frames, in Hz
+     * @param frameLength the number of samples in each frame
+     * @param bands the lower and upper edge of each band, in Hz
+     */
+    public GoertzelBank(double sampleRate, int frameLength, double[][] bands) {
+        this(sampleRate, frameLength, frameLength, bands);
+    }
+
+    /**
+     * Instantiates a filter bank which resolves the bands with a DFT shorter than the frame.
+     * @param sampleRate the sample rate of the frames, in Hz
+     * @param frameLength the number of samples in each frame
+     * @param dftLength the length of each segment, a divisor of frameLength; the bins are
+     *                  sampleRate / dftLength apart
+     * @param bands the lower and upper edge of each band, in Hz
+     */
+    public GoertzelBank(double sampleRate, int frameLength, int dftLength, double[][] bands) {
+        super(sampleRate, frameLength, dftLength, bands);
+        scale = (double) frameLength / dftLength;
+        boolean[] used = new boolean[binPower.length];
+        int count = 0;
+        for (int b = 0; b < firstBin.length; b++) {
+            for (int k = firstBin[b]; k <= lastBin[b]; k++) {
+                if (!used[k]) count++;
+                used[k] = true;
+            }
+        }
+        bins = new int[count];
+        coefficients = new double[count];
+        for (int k = 0, i = 0; k < used.length; k++) {
+            if (used[k]) {
+                bins[i] = k;
+                coefficients[i++] = 2 * Math.cos(2 * Math.PI * k / dftLength);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bins evaluated for each frame.
+     * @return the number of filters in the bank
+     */
+    public int getNumFilters() {
+        return bins.length;
+    }
+
+    @Override
+    public void compute(double[] frame, int offset, double[] energies) {
+        int f = 0;
+        for (; f + 4 <= bins.length; f += 4) {
+            double c0 = coefficients[f], c1 = coefficients[f + 1], c2 = coefficients[f + 2], c3 = coefficients[f + 3];
+            double p0 = 0, p1 = 0, p2 = 0, p3 = 0;
+            for (int start = offset; start < offset + frameLength; start += dftLength) {
+                double a1 = 0, a2 = 0, b1 = 0, b2 = 0, d1 = 0, d2 = 0, e1 = 0, e2 = 0;
+                for (int n = start; n < start + dftLength; n++) {
+                    double x = frame[n];
+                    double a = x + c0 * a1 - a2;
+                    double b = x + c1 * b1 - b2;
+                    double d = x + c2 * d1 - d2;
+                    double e = x + c3 * e1 - e2;
+                    a2 = a1; a1 = a;
+                    b2 = b1; b1 = b;
+                    d2 = d1; d1 = d;
+                    e2 = e1; e1 = e;
+                }
+                p0 += a1 * a1 + a2 * a2 - c0 * a1 * a2;
+                p1 += b1 * b1 + b2 * b2 - c1 * b1 * b2;
+                p2 += d1 * d1 + d2 * d2 - c2 * d1 * d2;
+                p3 += e1 * e1 + e2 * e2 - c3 * e1 * e2;
+            }
+            binPower[bins[f]] = scale * p0;
+            binPower[bins[f + 1]] = scale * p1;
+            binPower[bins[f + 2]] = scale * p2;
+            binPower[bins[f + 3]] = scale * p3;
+        }
+        for (; f < bins.length; f++) {
+            double c = coefficients[f];
+            double p = 0;
+            for (int start = offset; start < offset + frameLength; start += dftLength) {
+                double s1 = 0, s2 = 0;
+                for (int n = start; n < start + dftLength; n++) {
+                    double s = frame[n] + c * s1 - s2;
+                    s2 = s1;
+                    s1 = s;
+                }
+                p += s1 * s1 + s2 * s2 - c * s1 * s2;
+            }
+            binPower[bins[f]] = scale * p;
+        }
+        for (int b = 0; b < firstBin.length; b++) {
+            double sum = 0;
+            for (int k = firstBin[b]; k <= lastBin[b]; k++) {
+                sum += binPower[k];
+            }
+            energies[b] = sum;
+        }
+    }
+}
@@ -1,28 +1,208 @@
 package cs.umass.edu.myactivitiestoolkit.liedetector.services;
 
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.Log;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import cs.umass.edu.myactivitiestoolkit.liedetector.R;
 import cs.umass.edu.myactivitiestoolkit.liedetector.audio.AudioBufferReading;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.AudioCodec;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.LPCReading;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.LPCStream;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.LieClassifier;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MFCCReading;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MFCCStream;
 import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MicrophoneRecorder;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.NoiseSuppressor;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.ProsodyReading;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.ProsodyStream;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.StreamingSpectrogram;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.UtteranceReading;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.UtteranceStream;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.VoiceActivityDetector;
 import cs.umass.edu.myactivitiestoolkit.liedetector.communication.MHLClientFilter;
 import cs.umass.edu.myactivitiestoolkit.liedetector.constants.Constants;
+import cs.umass.edu.myactivitiestoolkit.liedetector.storage.WavWriter;
 import edu.umass.cs.MHLClient.client.MessageReceiver;
 
-public class AudioService extends SensorService implements MicrophoneRecorder.MicrophoneListener {
+public class AudioService extends SensorService implements MicrophoneRecorder.MicrophoneListener,
+        MFCCStream.MFCCListener, ProsodyStream.ProsodyListener, LPCStream.LPCListener,
+        UtteranceStream.UtteranceListener {
 
     /** Used during debugging to identify logs by class */
     @SuppressWarnings("unused")
     private static final String TAG = AudioService.class.getName();
 
+    /** The duration of each microphone buffer in low-latency mode. */
+    private static final int LOW_LATENCY_PERIOD_MILLIS = 20;
+
+    /** The duration of each microphone buffer otherwise. */
+    private static final int DEFAULT_PERIOD_MILLIS = 1000;
+
+    /** The number of samples in each MFCC frame; frames do not overlap. */
+    private static final int MFCC_FRAME_SIZE = 200;
+
+    /** The number of frames still treated as speech after speech ends, 200 ms at 25 ms per frame. */
+    private static final int VAD_HANGOVER_FRAMES = 8;
+
+    /** The number of samples in each prosody frame, 40 ms at 8 kHz, enough for two periods of 75 Hz. */
+    private static final int PROSODY_FRAME_SIZE = 320;
+
+    /** The number of samples between prosody frames, 10 ms at 8 kHz. */
+    private static final int PROSODY_HOP_SIZE = 80;
+
+    /** The number of samples in each LPC frame, 30 ms at 8 kHz. */
+    private static final int LPC_FRAME_SIZE = 240;
+
+    /** The number of samples between LPC frames, 10 ms at 8 kHz. */
+    private static final int LPC_HOP_SIZE = 80;
+
+    /** The order of the linear predictor, enough for four formants below 4 kHz. */
+    private static final int LPC_ORDER = 10;
+
+    /** The shortest utterance summarized, 300 ms at 8 kHz; shorter bursts are coughs or clicks. */
+    private static final int MIN_UTTERANCE_SIZE = 2400;
+
+    /** The number of samples in each spectrogram column, 32 ms at 8 kHz. */
+    private static final int SPECTROGRAM_FRAME_SIZE = 256;
+
+    /** The number of samples between spectrogram columns; consecutive frames overlap by half. */
+    private static final int SPECTROGRAM_HOP_SIZE = 128;
+
+    /** The number of spectrogram columns kept, about 5 seconds at 8 kHz. */
+    private static final int SPECTROGRAM_COLUMNS = 300;
+
+    /** The shortest time between spectrogram broadcasts, about the frame time of a 30 Hz display. */
+    private static final long SPECTROGRAM_BROADCAST_INTERVAL_MILLIS = 33;
+
+    /** The name of the on-device model, in the app's external files directory. */
+    private static final String CLASSIFIER_MODEL_FILENAME = "lie_model.bin";
+
+    /** The prefix of the names of recorded sessions, followed by the start time in milliseconds. */
+    private static final String SESSION_FILENAME_PREFIX = "session-";
+
+    /**
+     * The spectrogram of the most recent audio, shared with the UI in-process. It is static
+     * so that the UI can read it without binding to the service.
+     */
+    private static volatile StreamingSpectrogram spectrogram;
+
+    /**
+     * The number of views displaying the spectrogram. The spectrogram is only computed while
+     * there is one, so that uploading alone does not pay for it.
+     */
+    private static final AtomicInteger spectrogramViewers = new AtomicInteger();
+
+    /** The time of the last spectrogram broadcast, in milliseconds of uptime. */
+    private long lastSpectrogramBroadcast;
+
     /** The sensor responsible for collecting audio data from the phone. */
     private MicrophoneRecorder microphoneRecorder;
 
+    /**
+     * The encoding of raw audio uploads, null for a JSON array of samples, which every
+     * server version understands; the binary codecs require a server that reads the codec tag.
+     */
+    private AudioCodec audioCodec;
+
+    /** Whether MFCC features are computed on the phone instead of sending raw audio. */
+    private boolean uploadFeatures;
+
+    /**
+     * Computes MFCC features over the audio stream when {@link #uploadFeatures} is set. Written
+     * on the main thread and read on the dispatch thread, like the other streams.
+     */
+    private volatile MFCCStream mfccStream;
+
+    /** The features of the frames computed since the last upload. */
+    private double[] mfccBatch;
+
+    /** The number of values in {@link #mfccBatch}. */
+    private int mfccBatchSize;
+
+    /** Whether prosodic features are computed on the phone instead of sending raw audio. */
+    private boolean uploadProsody;
+
+    /** Computes prosodic features over the audio stream when {@link #uploadProsody} is set. */
+    private volatile ProsodyStream prosodyStream;
+
+    /** The stream position and features of each frame computed since the last upload. */
+    private double[] prosodyBatch;
+
+    /** The number of values in {@link #prosodyBatch}. */
+    private int prosodyBatchSize;
+
+    /** Whether formants and LPC coefficients are computed on the phone instead of sending raw audio. */
+    private boolean uploadLPC;
+
+    /** Computes LPC features over the audio stream when {@link #uploadLPC} is set. */
+    private volatile LPCStream lpcStream;
+
+    /** The stream position and features of each frame computed since the last upload. */
+    private double[] lpcBatch;
+
+    /** The number of values in {@link #lpcBatch}. */
+    private int lpcBatchSize;
+
+    /**
+     * The number of samples since the feature batches were last uploaded. They are uploaded
+     * once per second of audio, whatever the size of the microphone buffers.
+     */
+    private int batchSamples;
+
+    /** Whether each utterance is summarized on the phone instead of sending raw audio. */
+    private boolean uploadUtterances;
+
+    /**
+     * Segments the audio into utterances and summarizes their features when {@link #uploadUtterances}
+     * is set. Written on the main thread and read on the dispatch thread.
+     */
+    private volatile UtteranceStream utteranceStream;
+
+    /** Suppresses background noise before MFCC features are computed, null if disabled. */
+    private NoiseSuppressor noiseSuppressor;
+
+    /** Skips raw audio uploads during silence, null if disabled. */
+    private VoiceActivityDetector voiceActivityDetector;
+
+    /** The samples of the frame being filled for {@link #voiceActivityDetector}, carried across buffers. */
+    private short[] vadFrame;
+
+    /** The number of samples in {@link #vadFrame}. */
+    private int vadFrameFill;
+
+    /** Whether the last frame classified by {@link #voiceActivityDetector} was speech. */
+    private boolean vadLastSpeech;
+
+    /**
+     * Skips MFCC extraction during silence, null if disabled. It is separate from
+     * {@link #voiceActivityDetector}, since each adapts its noise floor to every frame it sees.
+     */
+    private VoiceActivityDetector mfccVoiceActivityDetector;
+
+    /** Scores features on the phone instead of waiting for the server's verdict, null if disabled. */
+    private volatile LieClassifier classifier;
+
+    /**
+     * The number of samples since the last on-device verdict. A verdict is taken once per
+     * second of audio, whatever the size of the microphone buffers.
+     */
+    private int verdictSamples;
+
+    /** Records the session to a WAV file on the phone, null if disabled. */
+    private volatile WavWriter sessionWriter;
+
     @Override
     protected void onServiceStarted() {
         broadcastMessage(Constants.MESSAGE.AUDIO_SERVICE_STARTED);
@@ -34,18 +214,209 @@ public class AudioService extends SensorService implements MicrophoneRecorder.Mi
     }
 
     protected void registerSensors() {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        boolean lowLatency = preferences.getBoolean(getString(R.string.pref_low_latency_key),
+                getResources().getBoolean(R.bool.pref_low_latency_default));
+        MicrophoneRecorder.configure(MicrophoneRecorder.frequency,
+                lowLatency ? LOW_LATENCY_PERIOD_MILLIS : DEFAULT_PERIOD_MILLIS);
         microphoneRecorder = MicrophoneRecorder.getInstance(this);
 
+        uploadFeatures = preferences.getBoolean(getString(R.string.pref_audio_features_key),
+                getResources().getBoolean(R.bool.pref_audio_features_default));
+        boolean skipSilence = preferences.getBoolean(getString(R.string.pref_skip_silence_key),
+                getResources().getBoolean(R.bool.pref_skip_silence_default));
+        uploadProsody = preferences.getBoolean(getString(R.string.pref_audio_prosody_key),
+                getResources().getBoolean(R.bool.pref_audio_prosody_default));
+        uploadLPC = preferences.getBoolean(getString(R.string.pref_audio_lpc_key),
+                getResources().getBoolean(R.bool.pref_audio_lpc_default));
+        uploadUtterances = preferences.getBoolean(getString(R.string.pref_audio_utterances_key),
+                getResources().getBoolean(R.bool.pref_audio_utterances_default));
+        batchSamples = 0;
+        audioCodec = AudioCodec.fromTag(preferences.getString(getString(R.string.pref_audio_codec_key),
+                getString(R.string.pref_audio_codec_default)));
+        boolean suppressNoise = preferences.getBoolean(getString(R.string.pref_noise_suppression_key),
+                getResources().getBoolean(R.bool.pref_noise_suppression_default));
+        boolean recordSession = preferences.getBoolean(getString(R.string.pref_record_session_key),
+                getResources().getBoolean(R.bool.pref_record_session_default));
+        boolean classifyOnDevice = preferences.getBoolean(getString(R.string.pref_on_device_classifier_key),
+                getResources().getBoolean(R.bool.pref_on_device_classifier_default));
+        voiceActivityDetector = skipSilence ? new VoiceActivityDetector(VAD_HANGOVER_FRAMES) : null;
+        vadFrame = skipSilence ? new short[MFCC_FRAME_SIZE] : null;
+        vadFrameFill = 0;
+        vadLastSpeech = false;
+        mfccVoiceActivityDetector = null;
+        classifier = classifyOnDevice ? loadClassifier() : null;
+        verdictSamples = 0;
+        mfccStream = null;
+        prosodyStream = null;
+        lpcStream = null;
+        utteranceStream = null;
+        if (uploadFeatures || uploadUtterances || (classifier != null && classifier.getInputType() == LieClassifier.INPUT_MFCC)) {
+            mfccStream = new MFCCStream(MFCC_FRAME_SIZE, MFCC_FRAME_SIZE, MicrophoneRecorder.frequency);
+            mfccVoiceActivityDetector = skipSilence ? new VoiceActivityDetector(VAD_HANGOVER_FRAMES) : null;
+            mfccStream.setVoiceActivityDetector(mfccVoiceActivityDetector);
+            if (uploadFeatures) {
+                mfccStream.registerListener(this);
+                mfccBatch = new double[(MicrophoneRecorder.frequency / MFCC_FRAME_SIZE + 1) * mfccStream.getNumFeatures()];
+                mfccBatchSize = 0;
+            }
+        }
+        noiseSuppressor = null;
+        if (suppressNoise && mfccStream != null) {
+            noiseSuppressor = new NoiseSuppressor(mfccStream.getFFTSize(), VAD_HANGOVER_FRAMES);
+            mfccStream.setNoiseSuppressor(noiseSuppressor);
+        }
+        if (uploadProsody || uploadUtterances || (classifier != null && classifier.getInputType() == LieClassifier.INPUT_PROSODY)) {
+            prosodyStream = new ProsodyStream(PROSODY_FRAME_SIZE, PROSODY_HOP_SIZE, MicrophoneRecorder.frequency);
+            if (uploadProsody) {
+                prosodyStream.registerListener(this);
+                prosodyBatch = new double[(MicrophoneRecorder.frequency / PROSODY_HOP_SIZE + 1) * (ProsodyStream.NUM_FEATURES + 1)];
+                prosodyBatchSize = 0;
+            }
+        }
+        if (uploadLPC || (classifier != null && classifier.getInputType() == LieClassifier.INPUT_LPC)) {
+            lpcStream = new LPCStream(LPC_FRAME_SIZE, LPC_HOP_SIZE, MicrophoneRecorder.frequency, LPC_ORDER);
+            if (uploadLPC) {
+                lpcStream.registerListener(this);
+                lpcBatch = new double[(MicrophoneRecorder.frequency / LPC_HOP_SIZE + 1) * (lpcStream.getNumFeatures() + 1)];
+                lpcBatchSize = 0;
+            }
+        }
+        if (classifier != null) {
+            int numFeatures;
+            if (classifier.getInputType() == LieClassifier.INPUT_MFCC) {
+                numFeatures = mfccStream.getNumFeatures();
+            } else if (classifier.getInputType() == LieClassifier.INPUT_PROSODY) {
+                numFeatures = ProsodyStream.NUM_FEATURES;
+            } else {
+                numFeatures = lpcStream.getNumFeatures();
+            }
+            if (classifier.getNumFeatures() != numFeatures) {
+                Log.w(TAG, "The on-device model expects " + classifier.getNumFeatures() + " features, not "
+                        + numFeatures + "; waiting for the server's verdict instead.");
+                classifier = null;
+            } else if (classifier.getInputType() == LieClassifier.INPUT_MFCC) {
+                mfccStream.registerListener(classifier);
+            } else if (classifier.getInputType() == LieClassifier.INPUT_PROSODY) {
+                prosodyStream.registerListener(classifier);
+            } else {
+                lpcStream.registerListener(classifier);
+            }
+        }
+        if (uploadUtterances) {
+            utteranceStream = new UtteranceStream(MFCC_FRAME_SIZE, VAD_HANGOVER_FRAMES, MIN_UTTERANCE_SIZE,
+                    Math.max(MFCC_FRAME_SIZE, PROSODY_FRAME_SIZE), mfccStream.getNumFeatures());
+            utteranceStream.registerListener(this);
+            mfccStream.registerListener(utteranceStream);
+            prosodyStream.registerListener(utteranceStream);
+        }
+
+        spectrogram = new StreamingSpectrogram(SPECTROGRAM_FRAME_SIZE, SPECTROGRAM_HOP_SIZE, SPECTROGRAM_COLUMNS);
+
+        sessionWriter = recordSession ? createSessionWriter() : null;
+
         Log.d(TAG, "Starting microphone.");
+        if (sessionWriter != null) {
+            microphoneRecorder.registerListener(sessionWriter);
+        }
         microphoneRecorder.registerListener(this);
         microphoneRecorder.startRecording();
 
     }
 
     protected void unregisterSensors() {
+        final UtteranceStream utterances = utteranceStream;
+        final WavWriter writer = sessionWriter;
+        utteranceStream = null;
+        sessionWriter = null;
+        // once the last buffer has been dispatched, so that neither is written to while closing
+        Runnable onStopped = new Runnable() {
+            @Override
+            public void run() {
+                if (utterances != null) {
+                    // report the answer in progress when recording stops
+                    utterances.finish();
+                }
+                if (writer != null) {
+                    Log.d(TAG, "Recorded " + writer.getNumSamples() + " samples.");
+                    try {
+                        writer.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        };
         if (microphoneRecorder != null) {
             microphoneRecorder.unregisterListener(this);
-            microphoneRecorder.stopRecording();
+            if (writer != null) {
+                microphoneRecorder.unregisterListener(writer);
+            }
+            microphoneRecorder.stopRecording(onStopped);
+        } else {
+            onStopped.run();
+        }
+        if (voiceActivityDetector != null) {
+            Log.d(TAG, "Voice activity: " + voiceActivityDetector.getFramesProcessed() + " frames processed, "
+                    + voiceActivityDetector.getFramesSkipped() + " frames skipped.");
+        }
+        if (mfccVoiceActivityDetector != null) {
+            Log.d(TAG, "MFCC voice activity: " + mfccVoiceActivityDetector.getFramesProcessed() + " frames processed, "
+                    + mfccVoiceActivityDetector.getFramesSkipped() + " frames skipped.");
+        }
+        if (noiseSuppressor != null) {
+            Log.d(TAG, "Noise suppression: " + noiseSuppressor.getFramesProcessed() + " frames, "
+                    + noiseSuppressor.getNoiseFrames() + " noise frames, "
+                    + noiseSuppressor.getMeanProcessMicros() + " us per frame.");
+        }
+        if (classifier != null) {
+            Log.d(TAG, "On-device classifier: " + classifier.getFramesScored() + " frames scored, "
+                    + classifier.getMeanScoreMicros() + " us per frame.");
+        }
+    }
+
+    /**
+     * Loads the on-device model, if one has been copied to the app's external files
+     * directory, e.g. with {@code adb push lie_model.bin /sdcard/Android/data/<package>/files/}.
+     * @return the classifier, or null if there is no valid model
+     */
+    private LieClassifier loadClassifier() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            Log.w(TAG, "External storage is unavailable; waiting for the server's verdict instead.");
+            return null;
+        }
+        File file = new File(directory, CLASSIFIER_MODEL_FILENAME);
+        if (!file.exists()) {
+            Log.w(TAG, "No on-device model at " + file + "; waiting for the server's verdict instead.");
+            return null;
+        }
+        try {
+            return LieClassifier.load(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Creates a WAV file for the session in the app's external files directory, from which
+     * it can be copied with {@code adb pull} and replayed with
+     * {@link cs.umass.edu.myactivitiestoolkit.liedetector.storage.WavReader}.
+     * @return the writer, or null if the file cannot be created
+     */
+    private WavWriter createSessionWriter() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            Log.w(TAG, "External storage is unavailable; the session is not recorded.");
+            return null;
+        }
+        File file = new File(directory, SESSION_FILENAME_PREFIX + System.currentTimeMillis() + ".wav");
+        try {
+            return new WavWriter(file, MicrophoneRecorder.frequency);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
         }
     }
 
@@ -54,6 +425,10 @@ public class AudioService extends SensorService implements MicrophoneRecorder.Mi
         client.registerMessageReceiver(new MessageReceiver(MHLClientFilter.SPEAKER) {
             @Override
             protected void onMessageReceived(JSONObject json) {
+                if (classifier != null) {
+                    // verdicts come from the phone, so the server's would be counted twice
+                    return;
+                }
                 String speaker;
                 try {
                     JSONObject data = json.getJSONObject("data");
@@ -84,15 +459,36 @@ public class AudioService extends SensorService implements MicrophoneRecorder.Mi
     }
 
     /**
-     * Broadcasts spectrogram of audio data.
-     * ter@param spectrogram 2d array of values
+     * Returns the spectrogram of the most recent audio. The spectrogram is updated by the
+     * recording thread while a view is attached, see {@link #attachSpectrogramView()}; use {@link StreamingSpectrogram#copyColumns(float[], long)} to read it.
+     * @return the spectrogram, or null if audio has not been recorded yet
+     */
+    public static StreamingSpectrogram getSpectrogram() {
+        return spectrogram;
+    }
+
+    /**
+     * Starts computing the spectrogram for a view that displays it. Each call must be matched
+     * by a call to {@link #detachSpectrogramView()}. Audio recorded while no view is attached
+     * is not added to the spectrogram.
+     */
+    public static void attachSpectrogramView() {
+        spectrogramViewers.incrementAndGet();
+    }
+
+    /**
+     * Stops computing the spectrogram once no view displays it.
+     */
+    public static void detachSpectrogramView() {
+        spectrogramViewers.decrementAndGet();
+    }
+
+    /**
+     * Notifies the UI that new columns were added to the {@link #getSpectrogram() spectrogram}.
+     * The spectrogram itself is shared in-process rather than copied into the intent.
      */
-    public void broadcastSpectrogram(double[][] spectrogram) {
+    public void broadcastSpectrogram() {
         Intent intent = new Intent();
-        intent.putExtra(Constants.KEY.SPECTROGRAM, spectrogram);
-        Log.d(TAG, spectrogram.length + ", " + spectrogram[0].length);
-//        intent.putExtra(Constants.KEY.WIDTH, spectrogram);
-//        intent.putExtra(Constants.KEY.HEIGHT, spectrogram);
         intent.setAction(Constants.ACTION.BROADCAST_SPECTROGRAM);
         LocalBroadcastManager manager = LocalBroadcastManager.getInstance(this);
         manager.sendBroadcast(intent);
@@ -112,15 +508,63 @@ public class AudioService extends SensorService implements MicrophoneRecorder.Mi
     @Override
     public void microphoneBuffer(short[] buffer, int window_size) {
         Log.d(TAG, String.valueOf(buffer.length));
-        client.sendSensorReading(new AudioBufferReading(userID, "MOBILE", "", System.currentTimeMillis(), buffer));
+        if (spectrogramViewers.get() > 0) {
+            spectrogram.write(buffer, 0, window_size);
+            // no faster than the display, whatever the buffer size
+            long now = SystemClock.uptimeMillis();
+            if (now - lastSpectrogramBroadcast >= SPECTROGRAM_BROADCAST_INTERVAL_MILLIS) {
+                lastSpectrogramBroadcast = now;
+                broadcastSpectrogram();
+            }
+        }
+        // each stage is read once, since they are replaced when the sensors are registered again
+        UtteranceStream utterances = utteranceStream;
+        MFCCStream mfcc = mfccStream;
+        ProsodyStream prosody = prosodyStream;
+        LPCStream lpc = lpcStream;
+        LieClassifier onDevice = classifier;
+        // segment before computing features, so each frame can be assigned to its utterance
+        if (utterances != null) {
+            utterances.write(buffer, 0, window_size);
+        }
+        if (mfcc != null) {
+            mfcc.write(buffer, 0, window_size);
+        }
+        if (prosody != null) {
+            prosody.write(buffer, 0, window_size);
+        }
+        if (lpc != null) {
+            lpc.write(buffer, 0, window_size);
+        }
+        if (onDevice != null) {
+            verdictSamples += window_size;
+            if (verdictSamples >= MicrophoneRecorder.frequency) {
+                verdictSamples -= MicrophoneRecorder.frequency;
+                String verdict = onDevice.takeVerdict();
+                if (verdict != null) {
+                    broadcastSpeaker(verdict);
+                }
+            }
+        }
+        if (uploadFeatures || uploadProsody || uploadLPC || uploadUtterances) {
+            batchSamples += window_size;
+            if (batchSamples >= MicrophoneRecorder.frequency) {
+                batchSamples -= MicrophoneRecorder.frequency;
+                uploadBatches(mfcc, lpc);
+            }
+            return;
+        }
+        if (voiceActivityDetector != null && !containsSpeech(buffer, window_size)) {
+            return;
+        }
+        // the recorder reuses the buffer once this returns, but the reading is encoded later
+        short[] copy = Arrays.copyOf(buffer, window_size);
+        client.sendSensorReading(new AudioBufferReading(userID, "MOBILE", "", System.currentTimeMillis(), copy, audioCodec));
 //        //convert short[] to double[]:
 //        double[] dBuffer = new double[buffer.length];
 //        for (int j=0;j<buffer.length;j++) {
 //            dBuffer[j] = buffer[j];
 //        }
-//        //compute spectrogram features
-//        double[][] spectrogram = Spectrogram.computeSpectrogram(dBuffer, 100, 50, Window.RECTANGULAR);
-//        broadcastSpectrogram(spectrogram);
 //        //computes statistical spectrum descriptor, rhythm pattern and rhythm histogram
 //        FeatureExtractionOptions opts = new FeatureExtractionOptions();
 //        opts.extractRP = false;
@@ -149,4 +593,116 @@ public class AudioService extends SensorService implements MicrophoneRecorder.Mi
 //            double[] mfccFeatures = MFCCFeatureExtractor.computeFeaturesForFrame(buffer, windowSize, i);
 //        }
     }
+
+    /**
+     * Uploads the features of the frames computed since the last upload, one reading per
+     * enabled feature type.
+     * @param mfcc the stream which computed {@link #mfccBatch}
+     * @param lpc the stream which computed {@link #lpcBatch}
+     */
+    private void uploadBatches(MFCCStream mfcc, LPCStream lpc) {
+        if (uploadFeatures && mfccBatchSize > 0) {
+            client.sendSensorReading(new MFCCReading(userID, "MOBILE", "", System.currentTimeMillis(),
+                    Arrays.copyOf(mfccBatch, mfccBatchSize), mfcc.getNumFeatures()));
+            mfccBatchSize = 0;
+        }
+        if (uploadProsody && prosodyBatchSize > 0) {
+            client.sendSensorReading(new ProsodyReading(userID, "MOBILE", "", System.currentTimeMillis(),
+                    Arrays.copyOf(prosodyBatch, prosodyBatchSize), ProsodyStream.NUM_FEATURES + 1));
+            prosodyBatchSize = 0;
+        }
+        if (uploadLPC && lpcBatchSize > 0) {
+            client.sendSensorReading(new LPCReading(userID, "MOBILE", "", System.currentTimeMillis(),
+                    Arrays.copyOf(lpcBatch, lpcBatchSize), lpc.getNumFeatures() + 1));
+            lpcBatchSize = 0;
+        }
+    }
+
+    /**
+     * Runs the voice activity detector over every frame completed by the buffer. Frames
+     * span buffers, so that buffers shorter than a frame, e.g. in low-latency mode, are
+     * classified too.
+     * @param buffer the microphone data buffer
+     * @param length the number of samples in the buffer
+     * @return true if any frame completed by the buffer contains speech, or if no frame was
+     * completed and the last frame did
+     */
+    private boolean containsSpeech(short[] buffer, int length) {
+        boolean speech = false;
+        boolean classified = false;
+        int offset = 0;
+        while (offset < length) {
+            int n = Math.min(length - offset, MFCC_FRAME_SIZE - vadFrameFill);
+            System.arraycopy(buffer, offset, vadFrame, vadFrameFill, n);
+            offset += n;
+            vadFrameFill += n;
+            if (vadFrameFill == MFCC_FRAME_SIZE) {
+                vadFrameFill = 0;
+                vadLastSpeech = voiceActivityDetector.isSpeech(vadFrame, 0, MFCC_FRAME_SIZE);
+                speech |= vadLastSpeech;
+                classified = true;
+            }
+        }
+        return classified ? speech : vadLastSpeech;
+    }
+
+    /**
+     * Collects the features of each frame until the next upload. Silent frames have no
+     * finite cepstrum and are dropped.
+     */
+    @Override
+    public void onMFCCFrame(double[] features, long sampleIndex) {
+        for (double feature : features) {
+            if (Double.isNaN(feature) || Double.isInfinite(feature)) return;
+        }
+        if (mfccBatchSize + features.length > mfccBatch.length) {
+            mfccBatch = Arrays.copyOf(mfccBatch, 2 * mfccBatch.length);
+        }
+        System.arraycopy(features, 0, mfccBatch, mfccBatchSize, features.length);
+        mfccBatchSize += features.length;
+    }
+
+    /**
+     * Collects the stream position and features of each frame until the next upload. When
+     * silence is skipped, unvoiced frames are dropped.
+     */
+    @Override
+    public void onProsodyFrame(double[] features, long sampleIndex) {
+        if (voiceActivityDetector != null && features[ProsodyStream.F0] == 0) return;
+        int frameSize = features.length + 1;
+        if (prosodyBatchSize + frameSize > prosodyBatch.length) {
+            prosodyBatch = Arrays.copyOf(prosodyBatch, 2 * prosodyBatch.length);
+        }
+        prosodyBatch[prosodyBatchSize] = sampleIndex;
+        System.arraycopy(features, 0, prosodyBatch, prosodyBatchSize + 1, features.length);
+        prosodyBatchSize += frameSize;
+    }
+
+    /**
+     * Collects the stream position and features of each frame until the next upload. When
+     * silence is skipped, frames without a formant are dropped.
+     */
+    @Override
+    public void onLPCFrame(double[] features, long sampleIndex) {
+        if (voiceActivityDetector != null && features[LPCStream.FORMANTS] == 0) return;
+        int frameSize = features.length + 1;
+        if (lpcBatchSize + frameSize > lpcBatch.length) {
+            lpcBatch = Arrays.copyOf(lpcBatch, 2 * lpcBatch.length);
+        }
+        lpcBatch[lpcBatchSize] = sampleIndex;
+        System.arraycopy(features, 0, lpcBatch, lpcBatchSize + 1, features.length);
+        lpcBatchSize += frameSize;
+    }
+
+    /**
+     * Sends the summary of an utterance as soon as its last frame has been processed.
+     */
+    @Override
+    public void onUtterance(UtteranceStream.Utterance utterance) {
+        Log.d(TAG, "Utterance of " + (utterance.getEnd() - utterance.getStart()) + " samples, "
+                + utterance.getMFCCStatistics().getCount() + " MFCC frames, "
+                + utterance.getProsodyStatistics().getCount() + " voiced frames.");
+        client.sendSensorReading(new UtteranceReading(userID, "MOBILE", "", System.currentTimeMillis(),
+                utterance, MicrophoneRecorder.frequency));
+    }
 }
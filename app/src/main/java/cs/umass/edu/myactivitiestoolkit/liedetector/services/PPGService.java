@@ -18,6 +18,7 @@ import cs.umass.edu.myactivitiestoolkit.liedetector.constants.Constants;
 import cs.umass.edu.myactivitiestoolkit.liedetector.ppg.HeartRateCameraView;
 import cs.umass.edu.myactivitiestoolkit.liedetector.ppg.PPGEvent;
 import cs.umass.edu.myactivitiestoolkit.liedetector.ppg.PPGListener;
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.BandPower;
 import cs.umass.edu.myactivitiestoolkit.liedetector.processing.FFT;
 import cs.umass.edu.myactivitiestoolkit.liedetector.processing.Filter;
 import cs.umass.edu.myactivitiestoolkit.liedetector.util.Interpolator;
@@ -139,12 +140,37 @@ public class PPGService extends SensorService implements PPGListener
 
     private final FFT fft = new FFT(16);
 
+    private final double[] heartRateSpectrumR = new double[16/2 + 1];
+
+    private final double[] heartRateSpectrumI = new double[16/2 + 1];
+
     private final double[] heartRateData = new double[16];
 
     private final long[] heartRateTimestamps = new long[16];
 
     private int hrIndex = 0;
 
+    /** The nominal rate of the camera frames, in Hz. */
+    private static final double PPG_SAMPLE_RATE = 30;
+
+    /** The number of PPG samples whose pulse band is analysed at a time, about 8.5 s at 30 Hz. */
+    private static final int PPG_WINDOW_SIZE = 256;
+
+    /** Computes the power of the pulse band, with whichever of the Goertzel bank and the FFT is cheaper. */
+    private final BandPower pulseBand = BandPower.create(PPG_SAMPLE_RATE, PPG_WINDOW_SIZE, BandPower.HEART_RATE_BAND);
+
+    private final double[] ppgWindow = new double[PPG_WINDOW_SIZE];
+
+    private final double[] pulseBandPower = new double[1];
+
+    private int ppgWindowIndex = 0;
+
+    /** The largest relative deviation of a peak-to-peak rate from the pulse band's rate. */
+    private static final double PULSE_BAND_TOLERANCE = 0.25;
+
+    /** The pulse rate of the strongest bin of the pulse band in the last window, 0 before the first. */
+    private int pulseBandBpm = 0;
+
     /**
      * This method is called each time a PPG sensor reading is received.
      * <br><br>
@@ -174,6 +200,33 @@ public class PPGService extends SensorService implements PPGListener
         //TODO: Buffer data if necessary for your algorithm
         //TODO: Call your heart beat and bpm detection algorithm
         displayHeartRate(event.timestamp, value);
+        analysePulseBand(value);
+    }
+
+    /**
+     * Buffers the filtered PPG signal and, for every full window, finds the pulse rate in
+     * the frequency domain. The peak detector's rates are checked against it, see
+     * {@link #isPlausibleBPM(int)}.
+     * @param value the filtered mean red value
+     */
+    private void analysePulseBand(double value) {
+        ppgWindow[ppgWindowIndex++] = value;
+        if (ppgWindowIndex < PPG_WINDOW_SIZE) return;
+        ppgWindowIndex = 0;
+        pulseBand.compute(ppgWindow, 0, pulseBandPower);
+        pulseBandBpm = (int) Math.round(60 * pulseBand.getPeakFrequency(0));
+        Log.d(TAG, "Pulse band: " + pulseBandBpm + " bpm, power " + pulseBandPower[0]);
+    }
+
+    /**
+     * Checks a rate from the time between two peaks against the pulse band, so that a
+     * spurious or missed peak is not reported as a sudden change in heart rate.
+     * @param bpm the peak-to-peak rate
+     * @return true if it is within {@link #PULSE_BAND_TOLERANCE} of the pulse band's rate,
+     *         or no window has been analysed yet
+     */
+    private boolean isPlausibleBPM(int bpm) {
+        return pulseBandBpm == 0 || Math.abs(bpm - pulseBandBpm) <= PULSE_BAND_TOLERANCE * pulseBandBpm;
     }
 
     /**
@@ -229,18 +282,21 @@ public class PPGService extends SensorService implements PPGListener
                 lastPeak = timestamp;
             else if(timestamp - lastPeak > 333){
                 int bpm = calculateBPM(timestamp);
+                lastPeak = timestamp;
+                if (!isPlausibleBPM(bpm)) {
+                    Log.d(TAG, "Skipped " + bpm + " bpm, the pulse band is at " + pulseBandBpm + " bpm");
+                    return;
+                }
                 heartRateData[hrIndex] = bpm;
                 heartRateTimestamps[hrIndex++] = timestamp;
                 if (hrIndex >= heartRateData.length){
                     hrIndex=0;
-                    double[] fftBufferI = new double[16]; //TODO: Interpolate
                     double[] interpolatedHRData = Interpolator.linearInterpolate(heartRateTimestamps, heartRateData, 16);
-                    fft.fft(interpolatedHRData, fftBufferI);
-                    Log.d(TAG, " : " + interpolatedHRData[0]);
+                    fft.realFft(interpolatedHRData, heartRateSpectrumR, heartRateSpectrumI);
+                    Log.d(TAG, " : " + heartRateSpectrumR[0]);
                 }
                 broadcastBPM(bpm);
                 client.sendSensorReading(new HRSensorReading(userID, "MOBILE", "", timestamp, bpm));
-                lastPeak = timestamp;
             }
         }
     }
@@ -0,0 +1,127 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MicrophoneRecorder;
+
+/**
+ * Replays a session recorded by {@link WavWriter}, or any 16-bit mono PCM WAV file, into
+ * a {@link MicrophoneRecorder.MicrophoneListener}, so that a session can be processed or
+ * uploaded again exactly as if it were coming from the microphone. The file is memory-mapped
+ * and samples are copied straight from the mapping into the buffer handed to the listener.
+ * <br><br>
+ * Replay can be paced to any multiple of real time, or run as fast as the listener can
+ * consume the buffers. As with the recorder, the buffer is reused once the listener returns.
+ *
+ * @see WavWriter
+ */
+public class WavReader {
+
+    /** The sample rate of the audio, in Hz. **/
+    private final int sampleRate;
+
+    /** The samples, from the first to the last. **/
+    private final ShortBuffer samples;
+
+    /**
+     * Maps a WAV file for reading. The file may be closed or deleted once this returns.
+     * @param file the file to read
+     * @throws IOException if the file cannot be read or is not a 16-bit mono PCM WAV file
+     */
+    public WavReader(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = input.getChannel();
+            // the mapping remains valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            input.close();
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < WavWriter.HEADER_SIZE || buffer.getInt(0) != 0x46464952 || buffer.getInt(8) != 0x45564157
+                || buffer.getInt(12) != 0x20746D66 || buffer.getInt(36) != 0x61746164) {
+            throw new IOException("Not a canonical WAV file.");
+        }
+        if (buffer.getShort(20) != 1 || buffer.getShort(22) != 1 || buffer.getShort(34) != 16) {
+            throw new IOException("Only 16-bit mono PCM is supported.");
+        }
+        sampleRate = buffer.getInt(24);
+        long available = buffer.limit() - WavWriter.HEADER_SIZE;
+        long dataSize = buffer.getInt(40) & 0xFFFFFFFFL;
+        if (dataSize == 0 || dataSize > available) {
+            // the writer was not closed, so the header was never patched
+            dataSize = available;
+        }
+        buffer.position(WavWriter.HEADER_SIZE);
+        buffer.limit(WavWriter.HEADER_SIZE + (int) (dataSize & ~1L));
+        samples = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+    }
+
+    /**
+     * Returns the sample rate of the recording.
+     * @return the sample rate, in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Returns the length of the recording.
+     * @return the number of samples
+     */
+    public int getNumSamples() {
+        return samples.limit();
+    }
+
+    /**
+     * Copies the whole recording into memory, e.g. to extract its features in one pass.
+     * @return the samples
+     */
+    public short[] readSamples() {
+        short[] copy = new short[samples.limit()];
+        samples.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * Delivers the recording to a listener in buffers of a fixed size; the last buffer may
+     * be shorter.
+     * @param listener receives the buffers on the calling thread
+     * @param bufferSize the number of samples in each buffer, e.g.
+     *                   {@link MicrophoneRecorder#getPeriodSamples()}
+     * @param speed the multiple of real time at which buffers are delivered, e.g. 1 for the
+     *              pace of the microphone; 0 delivers them as fast as the listener returns
+     * @throws InterruptedException if the thread is interrupted while pacing the replay
+     */
+    public void replay(MicrophoneRecorder.MicrophoneListener listener, int bufferSize, double speed)
+            throws InterruptedException {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive.");
+        }
+        short[] buffer = new short[bufferSize];
+        ShortBuffer source = samples.duplicate();
+        long start = System.nanoTime();
+        long delivered = 0;
+        while (source.hasRemaining()) {
+            int n = Math.min(bufferSize, source.remaining());
+            source.get(buffer, 0, n);
+            if (speed > 0) {
+                // a buffer becomes available once all of its samples would have been recorded
+                long due = start + (long) ((delivered + n) * 1e9 / (sampleRate * speed));
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+            }
+            listener.microphoneBuffer(buffer, n);
+            delivered += n;
+        }
+    }
+}
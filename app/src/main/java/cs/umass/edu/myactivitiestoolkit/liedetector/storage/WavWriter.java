@@ -0,0 +1,165 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MicrophoneRecorder;
+
+/**
+ * Records a session of microphone audio to a 16-bit mono PCM WAV file on the phone, so
+ * that an interview is not lost when the connection to the server is slow or down.
+ * <br><br>
+ * Samples are written through a memory-mapped window of the file rather than a stream.
+ * The file is extended a fixed extent of several seconds at a time, so a microphone
+ * buffer costs one bulk copy into the mapping and never a system call; the kernel writes
+ * the pages back in the background. {@link #close()} patches the sizes in the header and
+ * trims the unused part of the last extent.
+ * <br><br>
+ * If the app is killed before {@link #close()}, the header still says the file holds no
+ * samples. {@link WavReader} then takes every byte after the header as audio, including
+ * the silence of the unused part of the last extent.
+ *
+ * @see WavReader
+ */
+public class WavWriter implements MicrophoneRecorder.MicrophoneListener {
+
+    /** The size of the canonical PCM WAV header, in bytes. **/
+    static final int HEADER_SIZE = 44;
+
+    /** The number of seconds of audio by which the file is extended at a time. **/
+    private static final int EXTENT_SECONDS = 10;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    /** The size of each mapped extent, in bytes. **/
+    private final int extentSize;
+
+    /** The mapping of the current extent, null once the writer is closed. **/
+    private MappedByteBuffer extent;
+
+    /** The position in the file of the start of {@link #extent}. **/
+    private long extentStart;
+
+    /** The number of bytes of audio written after the header. **/
+    private long dataSize = 0;
+
+    /**
+     * Creates a WAV file, replacing any existing file, and writes its header.
+     * @param file the file to write
+     * @param sampleRate the sample rate of the audio, in Hz
+     * @throws IOException if the file cannot be created
+     */
+    public WavWriter(File file, int sampleRate) throws IOException {
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        channel = this.file.getChannel();
+        extentSize = 2 * sampleRate * EXTENT_SECONDS;
+
+        // mapping beyond the end of the file extends it
+        extentStart = 0;
+        extent = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + extentSize);
+        extent.order(ByteOrder.LITTLE_ENDIAN);
+        writeHeader(extent, sampleRate, 0);
+    }
+
+    /**
+     * Writes the canonical 44-byte header of a 16-bit mono PCM WAV file, leaving the
+     * position of the buffer after it.
+     * @param buffer a little-endian buffer positioned at the start of the file
+     * @param sampleRate the sample rate, in Hz
+     * @param dataSize the number of bytes of audio
+     */
+    static void writeHeader(ByteBuffer buffer, int sampleRate, long dataSize) {
+        buffer.putInt(0x46464952); // "RIFF"
+        buffer.putInt((int) (36 + dataSize));
+        buffer.putInt(0x45564157); // "WAVE"
+        buffer.putInt(0x20746D66); // "fmt "
+        buffer.putInt(16);
+        buffer.putShort((short) 1); // PCM
+        buffer.putShort((short) 1); // mono
+        buffer.putInt(sampleRate);
+        buffer.putInt(2 * sampleRate); // byte rate
+        buffer.putShort((short) 2); // block align
+        buffer.putShort((short) 16); // bits per sample
+        buffer.putInt(0x61746164); // "data"
+        buffer.putInt((int) dataSize);
+    }
+
+    /**
+     * Returns the number of samples written so far.
+     * @return the length of the recording, in samples
+     */
+    public synchronized long getNumSamples() {
+        return dataSize / 2;
+    }
+
+    /**
+     * Appends a microphone buffer. Buffers delivered after {@link #close()}, e.g. while the
+     * recorder is being stopped, are dropped.
+     */
+    @Override
+    public synchronized void microphoneBuffer(short[] buffer, int window_size) {
+        if (extent == null) return;
+        try {
+            write(buffer, 0, window_size);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends samples to the file, mapping a new extent whenever the current one is full.
+     * @param buffer the audio samples
+     * @param offset the index of the first sample to write
+     * @param length the number of samples to write
+     * @throws IOException if the file cannot be extended
+     * @throws IllegalStateException if the writer has been closed
+     */
+    public synchronized void write(short[] buffer, int offset, int length) throws IOException {
+        if (extent == null) {
+            throw new IllegalStateException("The writer has been closed.");
+        }
+        while (length > 0) {
+            if (!extent.hasRemaining()) {
+                // the pages of the full extent stay in the page cache and are written back
+                // by the kernel, even if the app is killed
+                extentStart += extent.capacity();
+                extent = channel.map(FileChannel.MapMode.READ_WRITE, extentStart, extentSize);
+                extent.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            int n = Math.min(length, extent.remaining() / 2);
+            extent.asShortBuffer().put(buffer, offset, n);
+            extent.position(extent.position() + 2 * n);
+            dataSize += 2L * n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Patches the sizes in the header, trims the file to the audio written and closes it.
+     * Further calls have no effect.
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void close() throws IOException {
+        if (extent == null) return;
+        extent.force();
+        extent = null;
+        try {
+            file.seek(4);
+            file.writeInt(Integer.reverseBytes((int) (36 + dataSize)));
+            file.seek(40);
+            file.writeInt(Integer.reverseBytes((int) dataSize));
+            file.setLength(HEADER_SIZE + dataSize);
+        } finally {
+            file.close();
+        }
+    }
+}
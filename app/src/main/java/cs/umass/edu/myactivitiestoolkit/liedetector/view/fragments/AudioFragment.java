@@ -23,7 +23,10 @@ import android.widget.ImageView;
 import android.widget.Switch;
 import android.widget.TextView;
 
+import java.util.Arrays;
+
 import cs.umass.edu.myactivitiestoolkit.liedetector.R;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.StreamingSpectrogram;
 import cs.umass.edu.myactivitiestoolkit.liedetector.constants.Constants;
 import cs.umass.edu.myactivitiestoolkit.liedetector.services.AccelerometerService;
 import cs.umass.edu.myactivitiestoolkit.liedetector.services.AudioService;
@@ -42,7 +45,29 @@ public class AudioFragment extends Fragment {
     /** Request code required for obtaining audio recording permission. **/
     private static final int AUDIO_PERMISSION_REQUEST_CODE = 5;
 
+    /** The log power, in dB, drawn in the coolest color of the spectrogram. **/
+    private static final double SPECTROGRAM_MIN_DB = 40;
+
+    /** The log power, in dB, drawn in the warmest color of the spectrogram. **/
+    private static final double SPECTROGRAM_MAX_DB = 130;
+
     /** The image displaying the audio spectrogram. **/
+    private ImageView imgSpectrogram;
+
+    /** The bitmap drawn into {@link #imgSpectrogram}. **/
+    private Bitmap spectrogramBitmap;
+
+    /** Our copy of the spectrogram ring, updated with only the new columns. **/
+    private float[] spectrogramColumns;
+
+    /** The colors of {@link #spectrogramColumns}, arranged in the same ring order. **/
+    private int[] spectrogramPixels;
+
+    /** The spectrogram {@link #spectrogramColumns} was copied from; a new one means the service restarted. **/
+    private StreamingSpectrogram spectrogramSource;
+
+    /** The number of spectrogram columns copied so far. **/
+    private long spectrogramColumnsSeen;
 
     /** The switch which toggles the {@link AudioService}. **/
     private Switch switchRecord;
@@ -93,6 +118,7 @@ public class AudioFragment extends Fragment {
         num_truth = (TextView) rootView.findViewById(R.id.num_truth);
         num_lie = (TextView) rootView.findViewById(R.id.num_lie);
         percent_truth = (TextView) rootView.findViewById(R.id.percent_truth);
+        imgSpectrogram = (ImageView) rootView.findViewById(R.id.imgSpectrogram);
         return rootView;
     }
 
@@ -104,7 +130,8 @@ public class AudioFragment extends Fragment {
      * Unlike the {@link} and {@link HeartRateFragment}, we do not visualize
      * the raw data. For this reason, there is no need to listen for it from the main UI. We
      * would, however, like to display a spectrogram of the audio data. To do this, we listen for
-     * {@link Constants.ACTION#BROADCAST_SPECTROGRAM}.
+     * {@link Constants.ACTION#BROADCAST_SPECTROGRAM}, and ask the service to compute the
+     * spectrogram until the fragment stops.
      * <br><br>
      *
      * Lastly to update the state of the audio switch properly, we listen for additional
@@ -125,14 +152,17 @@ public class AudioFragment extends Fragment {
         filter.addAction(Constants.ACTION.BROADCAST_SPECTROGRAM);
         filter.addAction(Constants.ACTION.BROADCAST_SPEAKER);
         broadcastManager.registerReceiver(receiver, filter);
+        AudioService.attachSpectrogramView();
     }
 
     /**
      * When the fragment stops, e.g. the user closes the application or opens a new activity,
-     * then we should unregister the {@link #receiver}.
+     * then we should unregister the {@link #receiver} and let the service stop computing the
+     * spectrogram.
      */
     @Override
     public void onStop() {
+        AudioService.detachSpectrogramView();
         LocalBroadcastManager broadcastManager = LocalBroadcastManager.getInstance(getActivity());
         try {
             broadcastManager.unregisterReceiver(receiver);
@@ -211,6 +241,47 @@ public class AudioFragment extends Fragment {
         return (r<<16|g<<8|b|255<<24);
     }
 
+    /**
+     * Draws the columns added to the {@link AudioService#getSpectrogram() spectrogram} since
+     * the last update. Only the new columns are copied and colored; the bitmap is then drawn
+     * from the ring starting at the oldest column, so the spectrogram scrolls to the left.
+     */
+    private void updateSpectrogram() {
+        StreamingSpectrogram spectrogram = AudioService.getSpectrogram();
+        if (spectrogram == null) return;
+        int width = spectrogram.getCapacity();
+        int height = spectrogram.getNumBins();
+        if (spectrogramColumns == null || spectrogramColumns.length != width * height) {
+            spectrogramColumns = new float[width * height];
+            spectrogramPixels = new int[width * height];
+            spectrogramBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            spectrogramColumnsSeen = 0;
+        } else if (spectrogram != spectrogramSource) {
+            // the service was restarted, so the columns of the previous recording are stale
+            Arrays.fill(spectrogramPixels, 0);
+            spectrogramColumnsSeen = 0;
+        }
+        spectrogramSource = spectrogram;
+
+        long previous = spectrogramColumnsSeen;
+        spectrogramColumnsSeen = spectrogram.copyColumns(spectrogramColumns, previous);
+        for (long c = Math.max(previous, spectrogramColumnsSeen - width); c < spectrogramColumnsSeen; c++) {
+            int slot = (int) (c % width);
+            for (int bin = 0; bin < height; bin++) {
+                double value = Math.max(SPECTROGRAM_MIN_DB, Math.min(SPECTROGRAM_MAX_DB, spectrogramColumns[slot * height + bin]));
+                // low frequencies at the bottom
+                spectrogramPixels[(height - 1 - bin) * width + slot] = heatMap(SPECTROGRAM_MIN_DB, SPECTROGRAM_MAX_DB, value);
+            }
+        }
+
+        int oldest = spectrogramColumnsSeen < width ? 0 : (int) (spectrogramColumnsSeen % width);
+        spectrogramBitmap.setPixels(spectrogramPixels, oldest, width, 0, 0, width - oldest, height);
+        if (oldest > 0) {
+            spectrogramBitmap.setPixels(spectrogramPixels, 0, width, width - oldest, 0, oldest, height);
+        }
+        imgSpectrogram.setImageBitmap(spectrogramBitmap);
+    }
+
     /**
      * The receiver listens for messages from the {@link AccelerometerService}, e.g. was the
      * service started/stopped, and updates the status views accordingly. It also
@@ -225,6 +296,13 @@ public class AudioFragment extends Fragment {
                     if (message == Constants.MESSAGE.AUDIO_SERVICE_STOPPED) {
                         switchRecord.setChecked(false);
                     }
+                } else if (intent.getAction().equals(Constants.ACTION.BROADCAST_SPECTROGRAM)) {
+                    getActivity().runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            updateSpectrogram();
+                        }
+                    });
                 } else if (intent.getAction().equals(Constants.ACTION.BROADCAST_SPEAKER)) {
                     final String speaker = intent.getStringExtra(Constants.KEY.SPEAKER);
                     if(speaker.equals("truth")){
@@ -0,0 +1,108 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round-trips audio through each {@link AudioCodec}.
+ */
+public class AudioCodecTest {
+
+    /**
+     * Generates a second of 8 kHz audio: a harmonic tone over noise.
+     * @param clipped true to add a burst which clips at full scale
+     */
+    private static short[] audio(boolean clipped) {
+        Random random = new Random(8);
+        short[] samples = new short[8000];
+        for (int i = 0; i < samples.length; i++) {
+            double value = 0;
+            for (int h = 1; h < 10; h++) {
+                value += Math.sin(2 * Math.PI * 150 * h * i / 8000.0) / h;
+            }
+            double amplitude = clipped && i >= 4000 && i < 4200 ? 40000 : 4000;
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE,
+                    amplitude * value + 100 * random.nextGaussian()));
+        }
+        return samples;
+    }
+
+    /**
+     * Returns the signal-to-noise ratio of the decoded audio, in dB.
+     */
+    private static double snr(short[] original, short[] decoded) {
+        double signal = 0, noise = 0;
+        for (int i = 0; i < original.length; i++) {
+            double error = original[i] - decoded[i];
+            signal += (double) original[i] * original[i];
+            noise += error * error;
+        }
+        return 10 * Math.log10(signal / noise);
+    }
+
+    @Test
+    public void pcm16IsLossless() {
+        short[] samples = audio(true);
+        samples[0] = Short.MIN_VALUE;
+        samples[1] = Short.MAX_VALUE;
+        byte[] encoded = AudioCodec.PCM16.encode(samples, samples.length);
+        assertEquals(2 * samples.length, encoded.length);
+        assertArrayEquals(samples, AudioCodec.PCM16.decode(encoded, samples.length));
+    }
+
+    @Test
+    public void muLawKeepsRelativeError() {
+        short[] samples = audio(true);
+        byte[] encoded = AudioCodec.MULAW.encode(samples, samples.length);
+        assertEquals(samples.length, encoded.length);
+        short[] decoded = AudioCodec.MULAW.decode(encoded, samples.length);
+        for (int i = 0; i < samples.length; i++) {
+            // 4 bits of mantissa, so each step is at most 1/16 of the magnitude, plus the clip
+            int magnitude = Math.min(Math.abs(samples[i]), 32635);
+            int error = Math.abs(Math.abs(decoded[i]) - magnitude);
+            assertTrue("sample " + i + ": " + samples[i] + " decoded as " + decoded[i],
+                    error <= magnitude / 16 + 8);
+        }
+    }
+
+    @Test
+    public void imaAdpcmTracksSignal() {
+        // the step size adapts too slowly for the edges of clipped audio, so it is left out
+        short[] samples = audio(false);
+        byte[] encoded = AudioCodec.IMA_ADPCM.encode(samples, samples.length);
+        assertEquals(4 + samples.length / 2, encoded.length);
+        short[] decoded = AudioCodec.IMA_ADPCM.decode(encoded, samples.length);
+        assertTrue(snr(samples, decoded) > 20);
+    }
+
+    @Test
+    public void oddAndEmptyLengths() {
+        short[] samples = audio(false);
+        for (AudioCodec codec : AudioCodec.values()) {
+            for (int length : new int[]{0, 1, 7}) {
+                byte[] encoded = codec.encode(samples, length);
+                short[] decoded = codec.decode(encoded, length);
+                assertEquals(codec + " with " + length + " samples", length, decoded.length);
+                if (length > 0 && codec != AudioCodec.MULAW) {
+                    // ADPCM starts from the first sample, so it is exact
+                    assertEquals(codec.toString(), samples[0], decoded[0]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tagsIdentifyCodecs() {
+        for (AudioCodec codec : AudioCodec.values()) {
+            assertSame(codec, AudioCodec.fromTag(codec.tag));
+        }
+        assertNull(AudioCodec.fromTag("json"));
+    }
+}
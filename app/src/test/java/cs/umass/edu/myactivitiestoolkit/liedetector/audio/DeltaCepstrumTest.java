@@ -0,0 +1,132 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the streaming {@link DeltaCepstrum} against the regression over the whole
+ * sequence, padded at both ends by repeating its first and last frames.
+ */
+public class DeltaCepstrumTest {
+
+    private static final int NUM_COEFFS = 3;
+
+    private static final int WINDOW = 2;
+
+    /** Collects the output frames of a delta stage. **/
+    private static class Collector implements MFCCStream.MFCCListener {
+        final List<double[]> frames = new ArrayList<>();
+        final List<Long> sampleIndices = new ArrayList<>();
+
+        @Override
+        public void onMFCCFrame(double[] features, long sampleIndex) {
+            frames.add(features.clone());
+            sampleIndices.add(sampleIndex);
+        }
+    }
+
+    /**
+     * Computes the regression of a sequence at frame t, clamping frames beyond either end.
+     */
+    private static double[] regress(double[][] sequence, int t) {
+        double[] out = new double[NUM_COEFFS];
+        double norm = 0;
+        for (int n = 1; n <= WINDOW; n++) {
+            double[] ahead = sequence[Math.min(t + n, sequence.length - 1)];
+            double[] behind = sequence[Math.max(t - n, 0)];
+            for (int i = 0; i < NUM_COEFFS; i++) {
+                out[i] += n * (ahead[i] - behind[i]);
+            }
+            norm += 2 * n * n;
+        }
+        for (int i = 0; i < NUM_COEFFS; i++) {
+            out[i] /= norm;
+        }
+        return out;
+    }
+
+    private static void checkAgainstReference(int numFrames) {
+        Random random = new Random(numFrames);
+        double[][] frames = new double[numFrames][NUM_COEFFS];
+        for (double[] frame : frames) {
+            for (int i = 0; i < NUM_COEFFS; i++) {
+                frame[i] = random.nextGaussian();
+            }
+        }
+        // the sequence with the padding before and after it
+        int pad = 2 * WINDOW;
+        double[][] padded = new double[numFrames + 2 * pad][];
+        for (int t = 0; t < padded.length; t++) {
+            padded[t] = frames[Math.max(0, Math.min(numFrames - 1, t - pad))];
+        }
+        double[][] deltas = new double[padded.length][];
+        for (int t = 0; t < padded.length; t++) {
+            deltas[t] = regress(padded, t);
+        }
+
+        Collector collector = new Collector();
+        DeltaCepstrum stage = new DeltaCepstrum(NUM_COEFFS, WINDOW, collector);
+        for (int t = 0; t < numFrames; t++) {
+            stage.onMFCCFrame(frames[t], 200L * t);
+        }
+        stage.finish();
+
+        assertEquals(numFrames, collector.frames.size());
+        for (int t = 0; t < numFrames; t++) {
+            double[] expected = new double[3 * NUM_COEFFS];
+            System.arraycopy(frames[t], 0, expected, 0, NUM_COEFFS);
+            System.arraycopy(deltas[t + pad], 0, expected, NUM_COEFFS, NUM_COEFFS);
+            System.arraycopy(regress(deltas, t + pad), 0, expected, 2 * NUM_COEFFS, NUM_COEFFS);
+            assertArrayEquals("frame " + t + " of " + numFrames, expected, collector.frames.get(t), 1e-12);
+            assertEquals(200L * t, (long) collector.sampleIndices.get(t));
+        }
+    }
+
+    @Test
+    public void matchesRegressionOverWholeSequence() {
+        checkAgainstReference(20);
+    }
+
+    @Test
+    public void streamShorterThanDelay() {
+        checkAgainstReference(1);
+        checkAgainstReference(3);
+    }
+
+    @Test
+    public void rampHasConstantDelta() {
+        Collector collector = new Collector();
+        DeltaCepstrum stage = new DeltaCepstrum(1, WINDOW, collector);
+        for (int t = 0; t < 20; t++) {
+            stage.onMFCCFrame(new double[]{0.5 * t}, t);
+        }
+        stage.finish();
+        assertEquals(20, collector.frames.size());
+        for (int t = 2 * WINDOW; t < 20 - 2 * WINDOW; t++) {
+            double[] frame = collector.frames.get(t);
+            assertEquals(0.5 * t, frame[0], 1e-12);
+            assertEquals(0.5, frame[1], 1e-12);
+            assertEquals(0, frame[2], 1e-12);
+        }
+    }
+
+    @Test
+    public void finishResetsStage() {
+        Collector collector = new Collector();
+        DeltaCepstrum stage = new DeltaCepstrum(1, WINDOW, collector);
+        stage.finish();
+        assertEquals(0, collector.frames.size());
+        stage.onMFCCFrame(new double[]{1}, 0);
+        stage.finish();
+        stage.onMFCCFrame(new double[]{2}, 0);
+        stage.finish();
+        assertEquals(2, collector.frames.size());
+        assertArrayEquals(new double[]{2, 0, 0}, collector.frames.get(1), 0);
+    }
+}
@@ -0,0 +1,79 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.storage.WavWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks that {@link MFCCBatch} computes the same features as a serial pass over the
+ * recording, and that it reads the recordings the app makes.
+ */
+public class MFCCBatchTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    private static final int FRAME_SIZE = 200;
+
+    private static final int HOP_SIZE = 80;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Generates a recording of noise whose level varies, so that frames differ. **/
+    private static short[] recording(int length) {
+        Random random = new Random(6);
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (random.nextGaussian() * (200 + 150 * Math.sin(i / 500.0)));
+        }
+        return samples;
+    }
+
+    private static double[] serial(short[] samples) {
+        int numFrames = MFCCBatch.getFrameCount(samples.length, FRAME_SIZE, HOP_SIZE);
+        int numCoeffs = MFCCFeatureExtractor.getPlan(FRAME_SIZE, SAMPLE_RATE).numCoeffs;
+        double[] features = new double[numFrames * numCoeffs];
+        double[] cepstrum = new double[numCoeffs];
+        for (int f = 0; f < numFrames; f++) {
+            MFCCFeatureExtractor.computeFeaturesForFrame(samples, FRAME_SIZE, f * HOP_SIZE, cepstrum);
+            System.arraycopy(cepstrum, 0, features, f * numCoeffs, numCoeffs);
+        }
+        return features;
+    }
+
+    @Test
+    public void matchesSerialExtraction() throws InterruptedException {
+        // the length leaves a partial frame at the end, which is not computed
+        short[] samples = recording(3 * SAMPLE_RATE + 123);
+        double[] expected = serial(samples);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int workers : new int[]{1, 3, 4, 7}) {
+                double[] actual = MFCCBatch.computeFeatures(samples, FRAME_SIZE, HOP_SIZE, SAMPLE_RATE, executor, workers);
+                assertArrayEquals(workers + " workers", expected, actual, 0);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void readsRecordedSession() throws Exception {
+        short[] samples = recording(SAMPLE_RATE / 2 + 1);
+        File file = folder.newFile("session.wav");
+        WavWriter writer = new WavWriter(file, SAMPLE_RATE);
+        writer.write(samples, 0, samples.length);
+        writer.close();
+        // the header must not be read as samples
+        assertArrayEquals(samples, MFCCBatch.readSamples(file));
+    }
+}
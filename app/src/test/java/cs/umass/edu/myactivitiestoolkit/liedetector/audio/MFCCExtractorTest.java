@@ -0,0 +1,144 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that an {@link MFCCExtractor} processes a stream without allocating, and that its
+ * single-precision path stays close to the double-precision path.
+ */
+public class MFCCExtractorTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    /** The largest deviation of a single-precision coefficient, as promised by {@link MFCCExtractor}. **/
+    private static final double SINGLE_PRECISION_TOLERANCE = 1e-4;
+
+    /** The number of frames measured; the frames before them warm up the JIT. **/
+    private static final int FRAMES = 2000;
+
+    /**
+     * Generates harmonic speech-like audio, voiced every other quarter second, over a
+     * little noise.
+     */
+    private static short[] speech(int length) {
+        Random random = new Random(1);
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            double f0 = 120 + 30 * Math.sin(i / 4000.0);
+            double value = 0;
+            for (int h = 1; h < 20; h++) {
+                value += Math.sin(2 * Math.PI * f0 * h * i / SAMPLE_RATE) / h;
+            }
+            double envelope = (i / (SAMPLE_RATE / 4)) % 2 == 0 ? 1 : 0.02;
+            samples[i] = (short) (envelope * 6000 * value + 200 * random.nextGaussian());
+        }
+        return samples;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the calling thread so far.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static boolean canMeasureAllocation() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return false;
+        }
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * Returns the number of bytes allocated per frame while computing the selected features
+     * of successive frames.
+     */
+    private static double bytesPerFrame(MFCCExtractor extractor, short[] samples, int frameSize, int features) {
+        double[] out = new double[extractor.getNumFeatures(features)];
+        int frames = (samples.length - frameSize) / 40;
+        for (int i = 0; i < FRAMES; i++) {
+            extractor.computeFeaturesForFrame(samples, frameSize, (i % frames) * 40, features, out);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < FRAMES; i++) {
+            extractor.computeFeaturesForFrame(samples, frameSize, (i % frames) * 40, features, out);
+        }
+        return (allocatedBytes() - before) / (double) FRAMES;
+    }
+
+    @Test
+    public void computeFeaturesForFrameDoesNotAllocate() {
+        assumeTrue(canMeasureAllocation());
+        short[] samples = speech(SAMPLE_RATE);
+        MFCCExtractor extractor = MFCCFeatureExtractor.getExtractor(200);
+        double[] cepstrum = new double[extractor.getNumCoeffs()];
+        for (int i = 0; i < FRAMES; i++) {
+            extractor.computeFeaturesForFrame(samples, 200, (i * 40) % (samples.length - 200), cepstrum);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < FRAMES; i++) {
+            extractor.computeFeaturesForFrame(samples, 200, (i * 40) % (samples.length - 200), cepstrum);
+        }
+        double perFrame = (allocatedBytes() - before) / (double) FRAMES;
+        assertTrue("allocated " + perFrame + " bytes per frame", perFrame < 1);
+    }
+
+    @Test
+    public void spectralFeaturesDoNotAllocate() {
+        assumeTrue(canMeasureAllocation());
+        short[] samples = speech(SAMPLE_RATE);
+        MFCCExtractor extractor = MFCCFeatureExtractor.getPlan(200, SAMPLE_RATE).newExtractor();
+        double perFrame = bytesPerFrame(extractor, samples, 200, MFCCExtractor.ALL_FEATURES);
+        assertTrue("allocated " + perFrame + " bytes per frame", perFrame < 1);
+    }
+
+    @Test
+    public void noiseSuppressionDoesNotAllocate() {
+        assumeTrue(canMeasureAllocation());
+        short[] samples = speech(SAMPLE_RATE);
+        MFCCPlan plan = MFCCFeatureExtractor.getPlan(200, SAMPLE_RATE);
+        MFCCExtractor extractor = plan.newExtractor();
+        extractor.setNoiseSuppressor(new NoiseSuppressor(plan.fftSize, 3));
+        double perFrame = bytesPerFrame(extractor, samples, 200, MFCCExtractor.ALL_FEATURES);
+        assertTrue("allocated " + perFrame + " bytes per frame", perFrame < 1);
+    }
+
+    @Test
+    public void singlePrecisionStaysWithinBound() {
+        short[] samples = speech(10 * SAMPLE_RATE);
+        for (int frameSize : new int[]{200, 256, 8000}) {
+            MFCCPlan plan = MFCCFeatureExtractor.getPlan(frameSize, SAMPLE_RATE);
+            MFCCExtractor doubles = plan.newExtractor(false);
+            MFCCExtractor floats = plan.newExtractor(true);
+            double[] expected = new double[doubles.getNumCoeffs()];
+            double[] actual = new double[floats.getNumCoeffs()];
+            for (int index = 0; index + frameSize <= samples.length; index += frameSize / 2) {
+                doubles.computeFeaturesForFrame(samples, frameSize, index, expected);
+                floats.computeFeaturesForFrame(samples, frameSize, index, actual);
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals("coefficient " + i + " of the frame at " + index + " of size " + frameSize,
+                            expected[i], actual[i], SINGLE_PRECISION_TOLERANCE);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void zeroCrossingRateOfSingleSample() {
+        MFCCExtractor extractor = MFCCFeatureExtractor.getPlan(200, SAMPLE_RATE).newExtractor();
+        double[] out = new double[1];
+        extractor.computeFeaturesForFrame(new short[]{1000}, 1, 0, MFCCExtractor.FEATURE_ZCR, out);
+        assertEquals(0, out[0], 0);
+    }
+}
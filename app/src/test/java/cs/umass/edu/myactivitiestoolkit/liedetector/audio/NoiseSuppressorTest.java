@@ -0,0 +1,113 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.FFT;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a {@link NoiseSuppressor} attenuates stationary noise while passing a tone
+ * which stands above it.
+ */
+public class NoiseSuppressorTest {
+
+    private static final int FRAME_SIZE = 256;
+
+    /** The bin of a 1 kHz tone at 8 kHz, which falls exactly on it. **/
+    private static final int TONE_BIN = 32;
+
+    private Random random;
+
+    private FFT fft;
+
+    private NoiseSuppressor suppressor;
+
+    private short[] frame;
+
+    private double[] re, im, gains;
+
+    @Before
+    public void setUp() {
+        random = new Random(4);
+        fft = new FFT(FRAME_SIZE);
+        suppressor = new NoiseSuppressor(FRAME_SIZE, 8);
+        frame = new short[FRAME_SIZE];
+        re = new double[FRAME_SIZE / 2 + 1];
+        im = new double[FRAME_SIZE / 2 + 1];
+        gains = new double[FRAME_SIZE / 2 + 1];
+    }
+
+    /**
+     * Suppresses a frame of Gaussian noise, plus a 1 kHz tone of the given amplitude, and
+     * records the gain applied to each bin in {@link #gains}.
+     */
+    private void process(double toneAmplitude) {
+        double[] samples = new double[FRAME_SIZE];
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            double value = 300 * random.nextGaussian() + toneAmplitude * Math.sin(2 * Math.PI * 1000 * i / 8000.0);
+            frame[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+            samples[i] = frame[i];
+        }
+        fft.realFft(samples, re, im);
+        double[] before = new double[re.length];
+        for (int k = 0; k < re.length; k++) {
+            before[k] = re[k] * re[k] + im[k] * im[k];
+        }
+        suppressor.process(frame, 0, FRAME_SIZE, re, im);
+        for (int k = 0; k < re.length; k++) {
+            gains[k] = Math.sqrt((re[k] * re[k] + im[k] * im[k]) / before[k]);
+        }
+    }
+
+    /** Returns the median gain of the last frame. **/
+    private double medianGain() {
+        double[] sorted = gains.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    @Test
+    public void attenuatesStationaryNoise() {
+        for (int i = 0; i < 50; i++) {
+            process(0);
+        }
+        assertEquals(NoiseSuppressor.GAIN_FLOOR, medianGain(), 1e-6);
+        double mean = 0;
+        for (double gain : gains) {
+            assertTrue(gain >= NoiseSuppressor.GAIN_FLOOR - 1e-6);
+            mean += gain / gains.length;
+        }
+        assertTrue("mean gain " + mean, mean < 1.5 * NoiseSuppressor.GAIN_FLOOR);
+    }
+
+    @Test
+    public void passesToneAboveNoise() {
+        for (int i = 0; i < 50; i++) {
+            process(0);
+        }
+        process(3000);
+        assertTrue("gain " + gains[TONE_BIN], gains[TONE_BIN] > 0.99);
+        // the noise around the tone is still attenuated
+        assertEquals(NoiseSuppressor.GAIN_FLOOR, medianGain(), 1e-6);
+    }
+
+    @Test
+    public void resetForgetsPreviousFrame() {
+        for (int i = 0; i < 50; i++) {
+            process(0);
+        }
+        for (int i = 0; i < 5; i++) {
+            process(3000);
+        }
+        suppressor.reset();
+        // the first frame after a reset estimates the noise from scratch
+        process(0);
+        assertEquals(NoiseSuppressor.GAIN_FLOOR, gains[TONE_BIN], 1e-6);
+    }
+}
@@ -0,0 +1,83 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link VoiceActivityDetector} follows the background as well as speech.
+ */
+public class VoiceActivityDetectorTest {
+
+    private static final int FRAME_SIZE = 200;
+
+    private static final int HANGOVER_FRAMES = 8;
+
+    /**
+     * Generates 8 kHz audio of Gaussian noise, whose level steps up from 30 to 300 at 5 s,
+     * with syllables of speech-like tone, 200 ms long and 80 ms apart, from 2 to 4 s and
+     * from 12 to 17 s.
+     */
+    private static short[] audio() {
+        Random random = new Random(1);
+        short[] samples = new short[20 * 8000];
+        for (int i = 0; i < samples.length; i++) {
+            double value = random.nextGaussian() * (i < 5 * 8000 ? 30 : 300);
+            boolean speaking = (i > 2 * 8000 && i < 4 * 8000) || (i > 12 * 8000 && i < 17 * 8000);
+            if (speaking && i % 2240 < 1600) {
+                value += 4000 * Math.sin(i * 0.06) * (0.6 + 0.4 * Math.sin(i * 0.002));
+            }
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+        }
+        return samples;
+    }
+
+    private static boolean[] classify(short[] samples) {
+        VoiceActivityDetector detector = new VoiceActivityDetector(HANGOVER_FRAMES);
+        boolean[] speech = new boolean[samples.length / FRAME_SIZE];
+        for (int f = 0; f < speech.length; f++) {
+            speech[f] = detector.isSpeech(samples, f * FRAME_SIZE, FRAME_SIZE);
+        }
+        return speech;
+    }
+
+    /** Returns the index of the frame containing the given time, in seconds. **/
+    private static int frame(double seconds) {
+        return (int) (seconds * 8000 / FRAME_SIZE);
+    }
+
+    @Test
+    public void detectsSpeech() {
+        boolean[] speech = classify(audio());
+        for (int f = frame(2.05); f < frame(4); f++) {
+            assertTrue("frame " + f, speech[f]);
+        }
+        for (int f = frame(12.05); f < frame(17); f++) {
+            assertTrue("frame " + f, speech[f]);
+        }
+    }
+
+    @Test
+    public void skipsSilence() {
+        boolean[] speech = classify(audio());
+        for (int f = 0; f < frame(2); f++) {
+            assertFalse("frame " + f, speech[f]);
+        }
+    }
+
+    @Test
+    public void followsStepInBackground() {
+        boolean[] speech = classify(audio());
+        // the louder background is taken for speech until a block of frames without a pause
+        int adapted = frame(5) + VoiceActivityDetector.MIN_STATISTICS_FRAMES + HANGOVER_FRAMES + 1;
+        for (int f = adapted; f < frame(12); f++) {
+            assertFalse("frame " + f, speech[f]);
+        }
+        for (int f = frame(17) + HANGOVER_FRAMES + 1; f < speech.length; f++) {
+            assertFalse("frame " + f, speech[f]);
+        }
+    }
+}
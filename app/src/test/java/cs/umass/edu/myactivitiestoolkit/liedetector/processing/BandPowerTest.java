@@ -0,0 +1,77 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.processing;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the {@link BandPower} implementations agree, so that the one picked by
+ * {@link BandPower#create(double, int, double[][])} does not change the result.
+ */
+public class BandPowerTest {
+
+    /** The largest relative difference between band energies computed by different methods. **/
+    private static final double RELATIVE_TOLERANCE = 1e-9;
+
+    /** Overlapping speech bands at 8 kHz, the last cut at the Nyquist frequency. **/
+    private static final double[][] SPEECH_BANDS = {{60, 500}, {500, 1000}, {900, 1100}, {2000, 4000}};
+
+    private static double[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        double[] frame = new double[length];
+        for (int i = 0; i < length; i++) {
+            frame[i] = random.nextGaussian();
+        }
+        return frame;
+    }
+
+    private static void assertSameEnergies(String message, double[] expected, double[] actual) {
+        for (int b = 0; b < expected.length; b++) {
+            assertEquals(message + ", band " + b, expected[b], actual[b], RELATIVE_TOLERANCE * expected[b]);
+        }
+    }
+
+    private static void checkGoertzelAgainstFFT(double sampleRate, int frameLength, double[][] bands) {
+        double[] frame = noise(frameLength + 5, frameLength);
+        BandPower fft = new FFTBandPower(sampleRate, frameLength, bands);
+        BandPower goertzel = new GoertzelBank(sampleRate, frameLength, bands);
+        double[] expected = new double[bands.length];
+        double[] actual = new double[bands.length];
+        fft.compute(frame, 5, expected);
+        goertzel.compute(frame, 5, actual);
+        String message = frameLength + " samples at " + sampleRate + " Hz";
+        assertSameEnergies(message, expected, actual);
+        for (int b = 0; b < bands.length; b++) {
+            assertEquals(message + ", peak of band " + b, fft.getPeakFrequency(b), goertzel.getPeakFrequency(b), 0);
+        }
+    }
+
+    @Test
+    public void goertzelBankMatchesFFT() {
+        checkGoertzelAgainstFFT(8000, 256, SPEECH_BANDS);
+        checkGoertzelAgainstFFT(8000, 1024, SPEECH_BANDS);
+        checkGoertzelAgainstFFT(30, 256, BandPower.HEART_RATE_BAND);
+    }
+
+    @Test
+    public void segmentedBankEstimatesFullLengthEnergy() {
+        // 1 kHz falls on a bin of both DFT lengths, so neither leaks into other bins
+        int frameLength = 1024;
+        double amplitude = 300;
+        double[] frame = new double[frameLength];
+        for (int i = 0; i < frameLength; i++) {
+            frame[i] = amplitude * Math.cos(2 * Math.PI * 1000 * i / 8000.0 + 0.7);
+        }
+        double[][] band = {{900, 1100}};
+        double[] exact = new double[1];
+        double[] segmented = new double[1];
+        new FFTBandPower(8000, frameLength, band).compute(frame, 0, exact);
+        new GoertzelBank(8000, frameLength, 64, band).compute(frame, 0, segmented);
+        // |X[k]|^2 of a full-length DFT of a tone on bin k
+        double expected = amplitude * amplitude * frameLength * frameLength / 4.0;
+        assertEquals(expected, exact[0], RELATIVE_TOLERANCE * expected);
+        assertEquals(expected, segmented[0], RELATIVE_TOLERANCE * expected);
+    }
+}
@@ -0,0 +1,83 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.processing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link DCT#transform(double[], int, double[], int)} against the dense orthonormal
+ * DCT-II matrix, which MFCC uses where the fast transform is not faster.
+ */
+public class DCTTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    /** The lengths checked: mel band counts, a power of two and an odd length. **/
+    private static final int[] LENGTHS = {20, 26, 40, 64, 13};
+
+    /**
+     * Computes the first outputs of the orthonormal DCT-II as a matrix product, row by row.
+     */
+    private static double[] dense(double[] x, int offset, int n, int numOutputs) {
+        double[] out = new double[numOutputs];
+        for (int k = 0; k < numOutputs; k++) {
+            double s = 0;
+            for (int i = 0; i < n; i++) {
+                s += Math.cos(Math.PI * (2 * i + 1) * k / (2.0 * n)) * x[offset + i];
+            }
+            out[k] = s * Math.sqrt(2.0 / n) * (k == 0 ? 1 / Math.sqrt(2) : 1);
+        }
+        return out;
+    }
+
+    private static void checkAgainstDense(int n, int numOutputs) {
+        Random random = new Random(31 * n + numOutputs);
+        int offset = 3;
+        double[] x = new double[offset + n];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = random.nextGaussian();
+        }
+        double[] input = x.clone();
+        double[] out = new double[numOutputs];
+        new DCT(n).transform(x, offset, out, numOutputs);
+        assertArrayEquals(numOutputs + " of " + n + " outputs", dense(x, offset, n, numOutputs), out, TOLERANCE);
+        assertArrayEquals("input modified for n = " + n, input, x, 0);
+    }
+
+    @Test
+    public void fullTransformMatchesDenseMatrix() {
+        for (int n : LENGTHS) {
+            checkAgainstDense(n, n);
+        }
+    }
+
+    @Test
+    public void truncatedTransformMatchesDenseMatrix() {
+        for (int n : LENGTHS) {
+            // odd and even counts, including those that leave a half with a single output
+            for (int numOutputs : new int[]{1, 2, 3, 12, 13, n / 2, n / 2 + 1, n - 1}) {
+                if (numOutputs <= n) {
+                    checkAgainstDense(n, numOutputs);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void constantHasOnlyDcOutput() {
+        for (int n : LENGTHS) {
+            double[] x = new double[n];
+            Arrays.fill(x, 1);
+            double[] out = new double[n];
+            new DCT(n).transform(x, 0, out, n);
+            assertEquals("n = " + n, Math.sqrt(n), out[0], TOLERANCE);
+            for (int k = 1; k < n; k++) {
+                assertEquals("output " + k + " for n = " + n, 0, out[k], TOLERANCE);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.processing;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks {@link FFT#realFft(double[], double[], double[])} against the complex transform.
+ */
+public class FFTTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    public void realFftMatchesComplexFft() {
+        Random random = new Random(3);
+        for (int n = 2; n <= 8192; n *= 2) {
+            FFT fft = new FFT(n);
+            double[] x = new double[n];
+            double[] re = new double[n], im = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextGaussian();
+                re[i] = x[i];
+            }
+            fft.fft(re, im);
+
+            double[] input = x.clone();
+            double[] realRe = new double[n / 2 + 1], realIm = new double[n / 2 + 1];
+            fft.realFft(x, realRe, realIm);
+            for (int k = 0; k <= n / 2; k++) {
+                assertEquals("re[" + k + "] for n = " + n, re[k], realRe[k], TOLERANCE);
+                assertEquals("im[" + k + "] for n = " + n, im[k], realIm[k], TOLERANCE);
+            }
+            assertArrayEquals("input modified for n = " + n, input, x, 0);
+        }
+    }
+
+    @Test
+    public void singlePrecisionRealFftMatchesComplexFft() {
+        Random random = new Random(5);
+        for (int n = 2; n <= 8192; n *= 2) {
+            FFT fft = new FFT(n);
+            float[] x = new float[n];
+            double[] re = new double[n], im = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = (float) random.nextGaussian();
+                re[i] = x[i];
+            }
+            fft.fft(re, im);
+
+            float[] realRe = new float[n / 2 + 1], realIm = new float[n / 2 + 1];
+            fft.realFft(x, realRe, realIm);
+            // the error of a float transform grows with the magnitude of the spectrum
+            double tolerance = 1e-5 * Math.sqrt(n) * Math.log(n);
+            for (int k = 0; k <= n / 2; k++) {
+                assertEquals("re[" + k + "] for n = " + n, re[k], realRe[k], tolerance);
+                assertEquals("im[" + k + "] for n = " + n, im[k], realIm[k], tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void realFftOfImpulseIsFlat() {
+        FFT fft = new FFT(64);
+        double[] x = new double[64];
+        x[0] = 1;
+        double[] re = new double[33], im = new double[33];
+        fft.realFft(x, re, im);
+        double[] ones = new double[33];
+        Arrays.fill(ones, 1);
+        assertArrayEquals(ones, re, TOLERANCE);
+        assertArrayEquals(new double[33], im, TOLERANCE);
+    }
+}
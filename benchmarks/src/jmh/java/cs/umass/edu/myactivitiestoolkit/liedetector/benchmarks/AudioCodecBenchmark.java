@@ -0,0 +1,64 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.AudioCodec;
+
+/**
+ * Encoding and decoding one second of 8 kHz audio with each binary codec, against the
+ * original JSON array of samples sent without a codec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AudioCodecBenchmark {
+
+    /** A codec name, or JSON for the encoding of readings without a codec. **/
+    @Param({"JSON", "PCM16", "MULAW", "IMA_ADPCM"})
+    public String encoding;
+
+    /** The codec, null for JSON. **/
+    private AudioCodec codec;
+
+    private short[] samples;
+
+    private Object encoded;
+
+    @Setup
+    public void setUp() {
+        codec = "JSON".equals(encoding) ? null : AudioCodec.valueOf(encoding);
+        samples = MFCCBenchmark.randomSamples(8000);
+        encoded = encode();
+    }
+
+    @Benchmark
+    public Object encode() {
+        if (codec == null) {
+            return new JSONArray(samples).toString();
+        }
+        return codec.encode(samples, samples.length);
+    }
+
+    @Benchmark
+    public short[] decode() {
+        if (codec == null) {
+            JSONArray array = new JSONArray((String) encoded);
+            short[] decoded = new short[array.length()];
+            for (int i = 0; i < decoded.length; i++) {
+                decoded[i] = (short) array.getInt(i);
+            }
+            return decoded;
+        }
+        return codec.decode((byte[]) encoded, samples.length);
+    }
+}
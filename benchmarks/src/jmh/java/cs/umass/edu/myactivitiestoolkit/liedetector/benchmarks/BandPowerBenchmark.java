@@ -0,0 +1,86 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.BandPower;
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.FFTBandPower;
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.GoertzelBank;
+
+/**
+ * Band energies from a Goertzel filter bank, at full and at coarse resolution, against
+ * the FFT path. The exact Goertzel bank only wins when the bands span few bins.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BandPowerBenchmark {
+
+    /** The DFT length of the coarse Goertzel bank. **/
+    private static final int SEGMENT_LENGTH = 32;
+
+    /** The frame length: a speech frame and the largest audio frame. **/
+    @Param({"256", "8192"})
+    public int size;
+
+    /**
+     * The bands: four wide speech bands (fundamental, first and second formant, high band)
+     * and a single formant band at 8 kHz, or the pulse band of a PPG signal at 30 Hz.
+     */
+    @Param({"stress", "formant", "pulse"})
+    public String bands;
+
+    private BandPower fft, goertzel, goertzelCoarse;
+
+    private double[] frame, energies;
+
+    @Setup
+    public void setUp() {
+        double sampleRate = 8000;
+        double[][] edges;
+        if (bands.equals("stress")) {
+            edges = new double[][]{{60, 500}, {500, 1000}, {1000, 2000}, {2000, 4000}};
+        } else if (bands.equals("formant")) {
+            edges = new double[][]{{900, 1100}};
+        } else {
+            sampleRate = 30;
+            edges = BandPower.HEART_RATE_BAND;
+        }
+        fft = new FFTBandPower(sampleRate, size, edges);
+        goertzel = new GoertzelBank(sampleRate, size, edges);
+        goertzelCoarse = new GoertzelBank(sampleRate, size, SEGMENT_LENGTH, edges);
+        Random random = new Random(42);
+        frame = new double[size];
+        for (int i = 0; i < size; i++) {
+            frame[i] = random.nextGaussian();
+        }
+        energies = new double[edges.length];
+    }
+
+    @Benchmark
+    public double[] fft() {
+        fft.compute(frame, 0, energies);
+        return energies;
+    }
+
+    @Benchmark
+    public double[] goertzel() {
+        goertzel.compute(frame, 0, energies);
+        return energies;
+    }
+
+    @Benchmark
+    public double[] goertzelCoarse() {
+        goertzelCoarse.compute(frame, 0, energies);
+        return energies;
+    }
+}
@@ -0,0 +1,63 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.clustering.Cluster;
+import cs.umass.edu.myactivitiestoolkit.liedetector.clustering.DBScan;
+import cs.umass.edu.myactivitiestoolkit.liedetector.location.FastConvexHull;
+import cs.umass.edu.myactivitiestoolkit.liedetector.location.GPSLocation;
+
+/**
+ * Clustering GPS locations with DBScan, and the convex hull drawn around each cluster.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DBScanBenchmark {
+
+    @Param({"100", "500", "2000"})
+    public int points;
+
+    private GPSLocation[] locations;
+
+    private List<GPSLocation> locationList;
+
+    private DBScan<GPSLocation> dbScan;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        locations = new GPSLocation[points];
+        for (int i = 0; i < points; i++) {
+            // a handful of places a few hundred meters apart, with GPS noise of ~10 m
+            int place = random.nextInt(5);
+            double lat = 42.39 + 0.004 * place + 0.0001 * random.nextGaussian();
+            double lng = -72.52 + 0.004 * place + 0.0001 * random.nextGaussian();
+            locations[i] = new GPSLocation(i, i * 1000L, lat, lng, 10);
+        }
+        locationList = Arrays.asList(locations);
+        dbScan = new DBScan<>(20, 5);
+    }
+
+    @Benchmark
+    public List<Cluster<GPSLocation>> cluster() {
+        return dbScan.cluster(locationList);
+    }
+
+    @Benchmark
+    public List<GPSLocation> convexHull() {
+        return FastConvexHull.execute(locations);
+    }
+}
@@ -0,0 +1,68 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.FlatMatrix;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MFCC;
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.DCT;
+
+/**
+ * The cepstral DCT of a log mel spectrum: the matrix product with the MFCC DCT matrix
+ * against the fast recursive transform, truncated to 12 coefficients or in full.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DCTBenchmark {
+
+    /** The number of mel bands, i.e. the length of the transform. **/
+    @Param({"20", "26", "40", "64"})
+    public int bands;
+
+    /** The number of coefficients kept: the usual 12, or all of them. **/
+    @Param({"12", "all"})
+    public String coefficients;
+
+    private FlatMatrix matrix;
+
+    private DCT dct;
+
+    private int numCoeffs;
+
+    private double[] melSpec, ceps;
+
+    @Setup
+    public void setUp() {
+        numCoeffs = coefficients.equals("all") ? bands : Integer.parseInt(coefficients);
+        matrix = new MFCC(256, numCoeffs, bands, 8000).dct;
+        dct = new DCT(bands);
+        Random random = new Random(42);
+        melSpec = new double[bands];
+        for (int i = 0; i < bands; i++) {
+            melSpec[i] = random.nextGaussian();
+        }
+        ceps = new double[numCoeffs];
+    }
+
+    @Benchmark
+    public double[] matrix() {
+        matrix.timesVector(melSpec, ceps);
+        return ceps;
+    }
+
+    @Benchmark
+    public double[] fast() {
+        dct.transform(melSpec, 0, ceps, numCoeffs);
+        return ceps;
+    }
+}
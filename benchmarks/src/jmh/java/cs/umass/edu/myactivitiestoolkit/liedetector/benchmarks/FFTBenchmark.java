@@ -0,0 +1,72 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.FFT;
+
+/**
+ * The complex FFT against the real-input FFT, in double and single precision.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FFTBenchmark {
+
+    /** The transform length: a speech frame, a PPG window and the largest audio frame. **/
+    @Param({"256", "1024", "8192"})
+    public int size;
+
+    private FFT fft;
+
+    private double[] signal, re, im;
+
+    private float[] signalFloat, reFloat, imFloat;
+
+    @Setup
+    public void setUp() {
+        fft = new FFT(size);
+        Random random = new Random(42);
+        signal = new double[size];
+        signalFloat = new float[size];
+        for (int i = 0; i < size; i++) {
+            signal[i] = random.nextGaussian();
+            signalFloat[i] = (float) signal[i];
+        }
+        re = new double[size];
+        im = new double[size];
+        reFloat = new float[size / 2 + 1];
+        imFloat = new float[size / 2 + 1];
+    }
+
+    @Benchmark
+    public double[] complexFft() {
+        // the transform is in place, so start from the signal every time
+        System.arraycopy(signal, 0, re, 0, size);
+        Arrays.fill(im, 0);
+        fft.fft(re, im);
+        return re;
+    }
+
+    @Benchmark
+    public double[] realFft() {
+        fft.realFft(signal, re, im);
+        return re;
+    }
+
+    @Benchmark
+    public float[] realFftFloat() {
+        fft.realFft(signalFloat, reFloat, imFloat);
+        return reFloat;
+    }
+}
@@ -0,0 +1,50 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.processing.Filter;
+
+/**
+ * Filtering one three-axis accelerometer reading.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FilterBenchmark {
+
+    @Param({"butterworth", "smoothing"})
+    public String type;
+
+    private Filter filter;
+
+    private float[] readings;
+
+    private int index;
+
+    @Setup
+    public void setUp() {
+        filter = "butterworth".equals(type) ? new Filter(1.0) : new Filter(2);
+        Random random = new Random(42);
+        readings = new float[3 * 1024];
+        for (int i = 0; i < readings.length; i++) {
+            readings[i] = (float) (9.8 * random.nextGaussian());
+        }
+    }
+
+    @Benchmark
+    public double[] getFilteredValues() {
+        int i = index;
+        index = (index + 3) % readings.length;
+        return filter.getFilteredValues(readings[i], readings[i + 1], readings[i + 2]);
+    }
+}
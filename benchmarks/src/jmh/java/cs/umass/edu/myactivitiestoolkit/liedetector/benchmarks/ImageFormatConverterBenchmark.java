@@ -0,0 +1,49 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.util.ImageFormatConverter;
+
+/**
+ * Decoding one NV21 camera preview frame, as done for every frame of the PPG measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageFormatConverterBenchmark {
+
+    @Param({"176x144", "640x480", "1280x720"})
+    public String resolution;
+
+    private int width, height;
+
+    private byte[] yuv;
+
+    private int[] rgba;
+
+    @Setup
+    public void setUp() {
+        int[] size = MatrixBenchmark.parseShape(resolution);
+        width = size[0];
+        height = size[1];
+        yuv = new byte[width * height * 3 / 2];
+        new Random(42).nextBytes(yuv);
+        rgba = new int[width * height];
+    }
+
+    @Benchmark
+    public int[] decodeYUV420SP() {
+        ImageFormatConverter.decodeYUV420SP(rgba, yuv, width, height);
+        return rgba;
+    }
+}
@@ -0,0 +1,51 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.util.Interpolator;
+
+/**
+ * Resampling irregularly timed readings onto a uniform grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InterpolatorBenchmark {
+
+    /** The number of readings, also the number of resampled points. **/
+    @Param({"16", "256", "4096"})
+    public int samples;
+
+    private long[] timestamps;
+
+    private double[] data;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        timestamps = new long[samples];
+        data = new double[samples];
+        long t = 1000000;
+        for (int i = 0; i < samples; i++) {
+            // about 30 Hz, with jitter
+            t += 25 + random.nextInt(17);
+            timestamps[i] = t;
+            data[i] = random.nextGaussian();
+        }
+    }
+
+    @Benchmark
+    public double[] linearInterpolate() {
+        return Interpolator.linearInterpolate(timestamps, data, samples);
+    }
+}
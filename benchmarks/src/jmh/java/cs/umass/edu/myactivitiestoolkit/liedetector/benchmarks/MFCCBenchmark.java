@@ -0,0 +1,151 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.HammingWindow;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MFCC;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MFCCExtractor;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MFCCFeatureExtractor;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.MFCCPlan;
+
+/**
+ * MFCC extraction of a single frame, from 16-bit samples to cepstral coefficients, with the
+ * app's configuration of 20 mel bands and 12 coefficients at 8 kHz.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MFCCBenchmark {
+
+    @State(Scope.Thread)
+    public static class Extraction {
+
+        /** The frame length: the 25 ms speech frame and the largest frame the app supports. **/
+        @Param({"200", "8192"})
+        public int frameSize;
+
+        @Param({"double", "float"})
+        public String precision;
+
+        MFCCExtractor extractor;
+
+        short[] samples;
+
+        double[] cepstrum;
+
+        double[] features;
+
+        @Setup
+        public void setUp() {
+            MFCCPlan plan = MFCCFeatureExtractor.getPlan(frameSize);
+            extractor = plan.newExtractor("float".equals(precision));
+            samples = randomSamples(frameSize);
+            cepstrum = new double[extractor.getNumCoeffs()];
+            features = new double[extractor.getNumFeatures(MFCCExtractor.ALL_FEATURES)];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cepstrum {
+
+        /** The FFT length of the frames above. **/
+        @Param({"256", "8192"})
+        public int fftSize;
+
+        MFCC mfcc;
+
+        double[] re, im;
+
+        @Setup
+        public void setUp() {
+            mfcc = MFCCFeatureExtractor.getPlan(fftSize).mfcc;
+            Random random = new Random(42);
+            re = new double[fftSize / 2 + 1];
+            im = new double[fftSize / 2 + 1];
+            for (int i = 0; i < re.length; i++) {
+                re[i] = random.nextGaussian();
+                im[i] = random.nextGaussian();
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Window {
+
+        @Param({"200", "8192"})
+        public int frameSize;
+
+        HammingWindow window;
+
+        short[] samples;
+
+        double[] buffer;
+
+        float[] bufferFloat;
+
+        @Setup
+        public void setUp() {
+            window = new HammingWindow(frameSize);
+            samples = randomSamples(frameSize);
+            int fftSize = MFCCPlan.nextPowerOfTwo(frameSize);
+            buffer = new double[fftSize];
+            bufferFloat = new float[fftSize];
+        }
+    }
+
+    @Benchmark
+    public double[] computeFeaturesForFrame(Extraction state) {
+        state.extractor.computeFeaturesForFrame(state.samples, state.frameSize, 0, state.cepstrum);
+        return state.cepstrum;
+    }
+
+    /** The cepstrum and every spectral feature, from the same FFT. **/
+    @Benchmark
+    public double[] computeAllFeatures(Extraction state) {
+        state.extractor.computeFeaturesForFrame(state.samples, state.frameSize, 0, MFCCExtractor.ALL_FEATURES, state.features);
+        return state.features;
+    }
+
+    /** The original allocating entry point, for comparison with the extractor. **/
+    @Benchmark
+    public double[] cepstrumAllocating(Cepstrum state) {
+        return state.mfcc.cepstrum(state.re, state.im);
+    }
+
+    @Benchmark
+    public double[] applyWindow(Window state) {
+        state.window.applyWindow(state.samples, 0, state.samples.length, state.buffer);
+        return state.buffer;
+    }
+
+    @Benchmark
+    public float[] applyWindowFloat(Window state) {
+        state.window.applyWindow(state.samples, 0, state.samples.length, state.bufferFloat);
+        return state.bufferFloat;
+    }
+
+    /**
+     * Generates noisy voiced audio, so that no mel band is empty.
+     */
+    static short[] randomSamples(int n) {
+        Random random = new Random(42);
+        short[] samples = new short[n];
+        for (int i = 0; i < n; i++) {
+            double voiced = 0;
+            for (int h = 1; h <= 10; h++) {
+                voiced += Math.sin(2 * Math.PI * 150 * h * i / 8000.0) / h;
+            }
+            samples[i] = (short) (4000 * voiced + 300 * random.nextGaussian());
+        }
+        return samples;
+    }
+}
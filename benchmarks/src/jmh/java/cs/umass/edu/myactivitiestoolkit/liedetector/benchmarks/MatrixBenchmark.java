@@ -0,0 +1,111 @@
+package cs.umass.edu.myactivitiestoolkit.liedetector.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.FlatMatrix;
+import cs.umass.edu.myactivitiestoolkit.liedetector.audio.Matrix;
+
+/**
+ * The JAMA-style {@link Matrix} against {@link FlatMatrix}, for the shapes of the MFCC
+ * computation: the dense mel filterbank of an 8192-point FFT (20x4097) and the DCT (12x20).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MatrixBenchmark {
+
+    @State(Scope.Thread)
+    public static class Product {
+
+        @Param({"20x4097", "12x20"})
+        public String shape;
+
+        /** The number of columns of the right operand, e.g. a batch of frames. **/
+        @Param({"1", "100"})
+        public int columns;
+
+        Matrix a, b;
+
+        FlatMatrix flatA, flatB, flatC;
+
+        @Setup
+        public void setUp() {
+            int[] size = parseShape(shape);
+            a = randomMatrix(size[0], size[1]);
+            b = randomMatrix(size[1], columns);
+            flatA = a.toFlatMatrix();
+            flatB = b.toFlatMatrix();
+            flatC = new FlatMatrix(size[0], columns);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Vector {
+
+        @Param({"20x4097", "12x20"})
+        public String shape;
+
+        Matrix a, x;
+
+        FlatMatrix flatA;
+
+        double[] vector, result;
+
+        @Setup
+        public void setUp() {
+            int[] size = parseShape(shape);
+            a = randomMatrix(size[0], size[1]);
+            x = randomMatrix(size[1], 1);
+            flatA = a.toFlatMatrix();
+            vector = x.getColumnPackedCopy();
+            result = new double[size[0]];
+        }
+    }
+
+    @Benchmark
+    public Matrix times(Product state) {
+        return state.a.times(state.b);
+    }
+
+    @Benchmark
+    public FlatMatrix timesInto(Product state) {
+        state.flatA.timesInto(state.flatB, state.flatC);
+        return state.flatC;
+    }
+
+    @Benchmark
+    public Matrix timesColumn(Vector state) {
+        return state.a.times(state.x);
+    }
+
+    @Benchmark
+    public double[] timesVector(Vector state) {
+        state.flatA.timesVector(state.vector, state.result);
+        return state.result;
+    }
+
+    static int[] parseShape(String shape) {
+        String[] parts = shape.split("x");
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    static Matrix randomMatrix(int m, int n) {
+        Random random = new Random(42);
+        Matrix matrix = new Matrix(m, n);
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                matrix.set(i, j, random.nextGaussian());
+            }
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,99 @@
+# -*- coding: utf-8 -*-
+"""
+Exports a trained classifier to the compact binary format scored on the
+phone by LieClassifier, so that truth/lie verdicts can be computed without
+a round trip to the server.
+
+The classifier must have been trained on the features computed by the
+phone, i.e. the frames of MFCC readings (SENSOR_AUDIO_MFCC), or of prosody
+or LPC readings (SENSOR_AUDIO_PROSODY, SENSOR_AUDIO_LPC, without the stream
+position), with the classes ["lie", "truth"] as in lie_detection.py.
+Logistic regression, decision trees and random forests are supported.
+
+Usage:
+    python export_model.py <classifier.pickle> <mfcc|prosody|lpc> [lie_model.bin]
+
+Copy the output to the phone with
+    adb push lie_model.bin /sdcard/Android/data/<package>/files/
+and enable "Classify on the phone" in the settings.
+
+"""
+
+import sys
+import struct
+import pickle
+import numpy as np
+from sklearn.linear_model import LogisticRegression
+from sklearn.tree import DecisionTreeClassifier
+from sklearn.ensemble import RandomForestClassifier
+
+MAGIC = 0x314D444C # "LDM1"
+VERSION = 1
+LOGISTIC_REGRESSION = 0
+TREE_ENSEMBLE = 1
+INPUT_TYPES = {"mfcc": 0, "prosody": 1, "lpc": 2}
+TRUTH = 1 # index of "truth" in ["lie", "truth"]
+
+def export_tree(tree):
+    """
+    Flattens a fitted sklearn tree into nodes of (feature, threshold, left, right).
+    A leaf has feature -1 and holds the probability of truth as its threshold.
+    """
+    data = struct.pack('<i', tree.node_count)
+    for node in range(tree.node_count):
+        if tree.children_left[node] == -1:
+            counts = tree.value[node][0]
+            p = counts[TRUTH] / float(np.sum(counts))
+            data += struct.pack('<ifii', -1, p, -1, -1)
+        else:
+            data += struct.pack('<ifii', tree.feature[node], tree.threshold[node],
+                                tree.children_left[node], tree.children_right[node])
+    return data
+
+def export(classifier, input_type, mean=None, scale=None):
+    """
+    Returns the binary model. Features are standardized as (x - mean) * scale
+    before scoring; by default they are used as they are.
+    """
+    if len(classifier.classes_) != 2:
+        raise ValueError("The classifier must distinguish exactly two classes, lie and truth")
+
+    if isinstance(classifier, LogisticRegression):
+        num_features = classifier.coef_.shape[1]
+    else:
+        num_features = classifier.n_features_
+    if mean is None:
+        mean = np.zeros(num_features)
+    if scale is None:
+        scale = np.ones(num_features)
+
+    if isinstance(classifier, LogisticRegression):
+        model_type = LOGISTIC_REGRESSION
+        params = struct.pack('<f', classifier.intercept_[0])
+        params += struct.pack('<%df' % num_features, *classifier.coef_[0])
+    elif isinstance(classifier, DecisionTreeClassifier):
+        model_type = TREE_ENSEMBLE
+        params = struct.pack('<i', 1) + export_tree(classifier.tree_)
+    elif isinstance(classifier, RandomForestClassifier):
+        model_type = TREE_ENSEMBLE
+        params = struct.pack('<i', len(classifier.estimators_))
+        for estimator in classifier.estimators_:
+            params += export_tree(estimator.tree_)
+    else:
+        raise ValueError("Unsupported classifier {}".format(type(classifier).__name__))
+
+    header = struct.pack('<5i', MAGIC, VERSION, model_type, INPUT_TYPES[input_type], num_features)
+    header += struct.pack('<%df' % num_features, *mean)
+    header += struct.pack('<%df' % num_features, *scale)
+    return header + params
+
+if __name__ == '__main__':
+    if len(sys.argv) < 3 or sys.argv[2] not in INPUT_TYPES:
+        print(__doc__)
+        sys.exit(1)
+    output_filename = sys.argv[3] if len(sys.argv) > 3 else 'lie_model.bin'
+    with open(sys.argv[1], 'rb') as f:
+        classifier = pickle.load(f)
+    with open(output_filename, 'wb') as f:
+        f.write(export(classifier, sys.argv[2]))
+    print("Saved model to {}".format(output_filename))